@@ -0,0 +1,53 @@
+package com.rcr2;
+
+import com.rcr2.impl.InMemoryPersistence;
+import com.rcr2.impl.InMemorySequenceProvider;
+
+import java.util.Optional;
+
+/**
+ * A context with a few trivial functions, enough to process statements without a real domain
+ */
+public class BenchmarkContext extends Context<BenchmarkFrame,BenchmarkContext> {
+
+    public BenchmarkContext() {
+        super(new InMemorySequenceProvider<>());
+        withPureFunction("e", 0, args -> Optional.of(new BenchmarkFrame()));
+        withPureFunction("f", 2, args -> Optional.of(new BenchmarkFrame()));
+        withPureFunction("h", 1, args -> Optional.of(new BenchmarkFrame()));
+        withSideEffect("g", 1, args -> Optional.of(new BenchmarkFrame()));
+    }
+
+    /**
+     * Fill working memory with a chain of {@code depth} inputs, x0 = e, x1 = h x0 and so on
+     * @return the last input of the chain
+     */
+    public static SessionInput<BenchmarkFrame,BenchmarkContext> chain(Session<BenchmarkFrame,BenchmarkContext> session, int depth) {
+        SessionInput<BenchmarkFrame,BenchmarkContext> sessionInput = null;
+        for (int i = 0; i < depth; i++) {
+            sessionInput = session.script.processStatement(session, i == 0 ? "x0 = e;" : "x" + i + " = h x" + (i - 1) + ";");
+            session.addStep(sessionInput, new BenchmarkFrame(), false);
+        }
+        return sessionInput;
+    }
+
+    public Session<BenchmarkFrame,BenchmarkContext> newSession() {
+        return new Session<>(
+                new BenchmarkFrame(),
+                new Feedback<BenchmarkFrame>() {
+                    @Override
+                    public int score(BenchmarkFrame previous, BenchmarkFrame currentFrame) {
+                        return 1;
+                    }
+
+                    @Override
+                    public int failed() {
+                        return -1;
+                    }
+                },
+                this,
+                new InMemoryPersistence<>(),
+                BenchmarkFrame::new
+        );
+    }
+}
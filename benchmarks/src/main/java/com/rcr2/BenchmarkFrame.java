@@ -0,0 +1,16 @@
+package com.rcr2;
+
+import java.util.List;
+
+public class BenchmarkFrame implements Frame<BenchmarkFrame> {
+
+    @Override
+    public BenchmarkFrame copy() {
+        return new BenchmarkFrame();
+    }
+
+    @Override
+    public void wrap(List<BenchmarkFrame> others) {
+
+    }
+}
@@ -0,0 +1,75 @@
+package com.rcr2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per step work of a session against working memory of a given depth
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+
+    /**
+     * Length of the chain of inputs in working memory, which is at most {@value Session#MAX_ARCHIVE_SIZE}
+     */
+    @Param({"1", "4", "8"})
+    int depth;
+
+    Session<BenchmarkFrame,BenchmarkContext> session;
+    SessionInput<BenchmarkFrame,BenchmarkContext> deepest;
+    String statement;
+    Script cached;
+    Script uncached;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        session = new BenchmarkContext().newSession();
+        deepest = BenchmarkContext.chain(session, depth);
+        statement = "y = h x" + (depth - 1) + ";";
+        cached = new Script();
+        uncached = new Script(0);
+    }
+
+    @Benchmark
+    public SessionInput<BenchmarkFrame,BenchmarkContext> processStatement() {
+        return cached.processStatement(session, statement);
+    }
+
+    @Benchmark
+    public SessionInput<BenchmarkFrame,BenchmarkContext> processStatementUncached() {
+        return uncached.processStatement(session, statement);
+    }
+
+    @Benchmark
+    public String serializeStatement() {
+        return deepest.serializeStatement();
+    }
+
+    @Benchmark
+    public SortedSet<String> dependsOn() {
+        return deepest.dependsOn();
+    }
+
+    @Benchmark
+    public Optional<BenchmarkFrame> imitatedStep() {
+        return session.imitatedStep("g x" + (depth - 1) + ";");
+    }
+
+    @Benchmark
+    public Optional<BenchmarkFrame> imitatorStep() {
+        try {
+            return session.imitatorStep();
+        } catch (ScriptParseException e) {
+            // perturbations may pick args that are out of scope
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.rcr2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up states in a tree already holding {@code states} states of {@code dependencies} dependencies each
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateNodeTreeBenchmark {
+
+    private static final int VOCABULARY = 100;
+
+    @Param({"2", "8", "32"})
+    int dependencies;
+
+    @Param({"1000", "100000"})
+    int states;
+
+    StateNodeTree tree;
+    List<Set<String>> known;
+    List<String> nonScoped;
+    int next = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        tree = new StateNodeTree();
+        known = new ArrayList<>();
+        for (int i = 0; i < states; i++) {
+            Set<String> state = new TreeSet<>();
+            while (state.size() < dependencies)
+                state.add("h (x" + random.nextInt(VOCABULARY) + ")");
+            tree.find(state);
+            if (known.size() < 1024)
+                known.add(state);
+        }
+        nonScoped = Arrays.asList("h (x0)", "h (x1)", "h (x2)", "h (x3)");
+    }
+
+    private Set<String> nextState() {
+        next = (next + 1) % known.size();
+        return known.get(next);
+    }
+
+    @Benchmark
+    public StateNodeTree.StateNode find() {
+        return tree.find(nextState());
+    }
+
+    @Benchmark
+    public Set<StateNodeTree.StateNode> abstractlyRelated() {
+        return tree.abstractlyRelated(nextState(), nonScoped);
+    }
+}
@@ -0,0 +1,39 @@
+package com.rcr2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one statement with the hand written {@link StatementParser} against walking the ANTLR parse tree
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementParserBenchmark {
+
+    @Param({"a = f x y;", "g x;", "a = h (text);", "__12 = f text x;"})
+    String input;
+
+    Session<BenchmarkFrame,BenchmarkContext> session;
+    Script script;
+
+    @Setup
+    public void setup() {
+        session = new BenchmarkContext().newSession();
+        script = new Script(0);
+    }
+
+    @Benchmark
+    public SessionInput<BenchmarkFrame,BenchmarkContext> handWritten() {
+        return StatementParser.parse(session, input);
+    }
+
+    @Benchmark
+    public SessionInput<BenchmarkFrame,BenchmarkContext> antlr() {
+        return script.parseWithAntlr(session, input);
+    }
+}
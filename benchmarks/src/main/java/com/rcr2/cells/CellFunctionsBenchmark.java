@@ -0,0 +1,81 @@
+package com.rcr2.cells;
+
+import com.rcr2.Function;
+import com.rcr2.impl.InMemorySequenceProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pure functions of the cells example on frames of {@code cells} cells each, scattered over a square
+ * sized so that about one place in four holds a cell. Every call gets fresh copies of the frames
+ * so that the work a frame caches on first use is measured too
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellFunctionsBenchmark {
+
+    @Param({"16", "256", "4096"})
+    int cells;
+
+    CellFrame first;
+    CellFrame second;
+
+    Function<CellFrame> together;
+    Function<CellFrame> apart;
+    Function<CellFrame> threats;
+    Function<CellFrame> resources;
+
+    @Setup
+    public void setup() {
+        int side = (int) Math.ceil(Math.sqrt(cells * 4.0));
+        CellFrame.Player mainCell = new CellFrame.Player(side / 2, side / 2);
+        CellsContext context = new CellsContext(new InMemorySequenceProvider<>(), mainCell, side, side, new Random(7));
+        Functions.setContextFunctions(context);
+        together = context.functionForName("together", null, null);
+        apart = context.functionForName("apart", null, null);
+        threats = context.functionForName("threats", null, null);
+        resources = context.functionForName("resources", null, null);
+
+        Random random = new Random(11);
+        first = frame(mainCell, side, random);
+        second = frame(mainCell, side, random);
+    }
+
+    private CellFrame frame(CellFrame.Player mainCell, int side, Random random) {
+        CellFrame frame = new CellFrame(mainCell);
+        for (int i = 0; i < cells; i++) {
+            int x = random.nextInt(side);
+            int y = random.nextInt(side);
+            frame.withCell(random.nextBoolean() ? new CellFrame.Animate(x, y) : new CellFrame.Inanimate(x, y));
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public Optional<CellFrame> together() {
+        return together.apply(Arrays.asList(first.copy(), second.copy()));
+    }
+
+    @Benchmark
+    public Optional<CellFrame> apart() {
+        return apart.apply(Arrays.asList(first.copy(), second.copy()));
+    }
+
+    @Benchmark
+    public Optional<CellFrame> threats() {
+        return threats.apply(Arrays.asList(first.copy()));
+    }
+
+    @Benchmark
+    public Optional<CellFrame> resources() {
+        return resources.apply(Arrays.asList(first.copy()));
+    }
+}
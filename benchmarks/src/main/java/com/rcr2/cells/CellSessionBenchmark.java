@@ -0,0 +1,53 @@
+package com.rcr2.cells;
+
+import com.rcr2.impl.InMemoryPersistence;
+import com.rcr2.impl.InMemorySequenceProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of the world after a step, on square grids of {@code size} by {@code size} places.
+ * The world is created again for every iteration since the cells keep multiplying.
+ * With {@code parallel} the chunks of the world are ticked on the common pool.
+ * A positive {@code populated} only starts cells within that many places of the main cell, for large sparse worlds
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellSessionBenchmark {
+
+    @Param({"10", "50", "200", "1000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    @Param({"0"})
+    int populated;
+
+    CellSession session;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        CellFrame.Player mainCell = new CellFrame.Player(size / 2, size / 2);
+        CellsContext context = populated > 0
+                ? new CellsContext(new InMemorySequenceProvider<>(), mainCell, size, size, new Random(), populated)
+                : new CellsContext(new InMemorySequenceProvider<>(), mainCell, size, size);
+        Functions.setContextFunctions(context);
+        if (parallel)
+            context.setTicPool(ForkJoinPool.commonPool());
+        session = new CellSession(new InMemoryPersistence<>(), context, () -> new CellFrame(mainCell));
+    }
+
+    @Benchmark
+    public CellSession afterStep() {
+        session.afterStep();
+        return session;
+    }
+}
@@ -0,0 +1,70 @@
+package com.rcr2.impl;
+
+import com.rcr2.BenchmarkContext;
+import com.rcr2.BenchmarkFrame;
+import com.rcr2.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes against in memory persistence already holding {@code states} states
+ * with {@code candidates} subsequent statements each
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"InMemory", "ConcurrentInMemory", "CompactInMemory"})
+    String implementation;
+
+    @Param({"1000", "100000"})
+    int states;
+
+    @Param({"4", "64"})
+    int candidates;
+
+    @Param({"4"})
+    int depth;
+
+    AbstractPersistence<BenchmarkFrame,BenchmarkContext> persistence;
+    Session<BenchmarkFrame,BenchmarkContext> session;
+    Random random;
+
+    private AbstractPersistence<BenchmarkFrame,BenchmarkContext> newPersistence() {
+        switch (implementation) {
+            case "InMemory": return new InMemoryPersistence<>();
+            case "ConcurrentInMemory": return new ConcurrentInMemoryPersistence<>();
+            case "CompactInMemory": return new CompactInMemoryPersistence<>();
+            default: throw new IllegalArgumentException(implementation);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        persistence = newPersistence();
+        for (int state = 0; state < states; state++)
+            for (int candidate = 0; candidate < candidates; candidate++)
+                for (int observation = 0; observation < 2; observation++)
+                    persistence.addObservation("h (x" + state + ")", "g (x" + candidate + ")", random.nextInt(10));
+
+        session = new BenchmarkContext().newSession();
+        BenchmarkContext.chain(session, depth);
+    }
+
+    @Benchmark
+    public String bestFor() {
+        return persistence.bestFor("h (x" + random.nextInt(states) + ")", 2);
+    }
+
+    @Benchmark
+    public void update() {
+        persistence.update(session, random.nextInt(10));
+    }
+}
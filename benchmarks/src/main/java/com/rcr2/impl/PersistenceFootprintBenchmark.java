@@ -0,0 +1,76 @@
+package com.rcr2.impl;
+
+import com.rcr2.BenchmarkContext;
+import com.rcr2.BenchmarkFrame;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The heap retained by an in memory persistence holding {@code states} states with {@code candidates}
+ * subsequent statements each, every observation passing fresh string instances as a session does.
+ *
+ * Each invocation fills a new persistence. The bytes it retains once a full collection has run are reported
+ * as the {@code retainedBytes} and {@code bytesPerPair} secondary results. JMH sums such counters over the
+ * measured iterations, so only one is measured, after one to warm up
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PersistenceFootprintBenchmark {
+
+    @Param({"InMemory", "CompactInMemory"})
+    String implementation;
+
+    @Param({"10000"})
+    int states;
+
+    @Param({"100"})
+    int candidates;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedBytes;
+        public long bytesPerPair;
+    }
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private AbstractPersistence<BenchmarkFrame,BenchmarkContext> newPersistence() {
+        switch (implementation) {
+            case "InMemory": return new InMemoryPersistence<>();
+            case "CompactInMemory": return new CompactInMemoryPersistence<>();
+            default: throw new IllegalArgumentException(implementation);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public AbstractPersistence<BenchmarkFrame,BenchmarkContext> fill(Footprint footprint) {
+        Random random = new Random(42);
+        long before = usedHeap();
+        AbstractPersistence<BenchmarkFrame,BenchmarkContext> persistence = newPersistence();
+        for (int state = 0; state < states; state++)
+            for (int candidate = 0; candidate < candidates; candidate++)
+                persistence.addObservation(new StringBuilder("h (x").append(state).append(")").toString(),
+                        new StringBuilder("g (x").append(candidate).append(")").toString(),
+                        random.nextInt(10));
+        long retained = usedHeap() - before;
+
+        footprint.retainedBytes = retained;
+        footprint.bytesPerPair = retained / ((long) states * candidates);
+        return persistence;
+    }
+}
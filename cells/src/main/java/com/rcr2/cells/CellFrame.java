@@ -5,6 +5,7 @@ import lombok.val;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class CellFrame implements DisplayableFrame<CellFrame> {
@@ -30,6 +31,7 @@ public class CellFrame implements DisplayableFrame<CellFrame> {
     public void wrap(List<CellFrame> others) {
         for (val frame : others)
             this.cells.addAll(frame.getCells());
+        index = null;
     }
 
     private final Cell mainCell;
@@ -57,18 +59,24 @@ public class CellFrame implements DisplayableFrame<CellFrame> {
         return "Cell Energy: " + cell.energy;
     }
 
+    // cells lose or gain energy once every this many tics
+    static final int TIC_PERIOD = 4;
+    static final int ANIMATE_ENERGY = 5;
+    static final int INANIMATE_ENERGY = 1;
+    static final int MAX_INANIMATE_ENERGY = 8;
+
     public static class Animate extends Cell {
         private int wait = 0;
 
         public Animate(int x, int y) {
             super(x, y);
-            energy = 5;
+            energy = ANIMATE_ENERGY;
         }
 
         @Override
         public void tic() {
             wait++;
-            if (wait == 4) {
+            if (wait == TIC_PERIOD) {
                 energy--;
                 wait = 0;
             }
@@ -86,32 +94,46 @@ public class CellFrame implements DisplayableFrame<CellFrame> {
 
         public Inanimate(int x, int y) {
             super(x, y);
-            energy = 1;
+            energy = INANIMATE_ENERGY;
         }
 
         public void tic() {
             wait++;
-            if (wait == 4) {
-                energy = Math.min(energy + 1, 8);
+            if (wait == TIC_PERIOD) {
+                energy = Math.min(energy + 1, MAX_INANIMATE_ENERGY);
                 wait = 0;
             }
         }
     }
 
     private List<Cell> cells = new ArrayList<>();
+    // built on first use and dropped whenever cells are added
+    private CellIndex index;
 
     public CellFrame withCell(Cell cell) {
         cells.add(cell);
+        index = null;
         return this;
     }
 
     public CellFrame withCells(Collection<Cell> others) {
         this.cells.addAll(others);
+        index = null;
         return this;
     }
 
+    /**
+     * @return the cells, read only so that the index cannot miss a change
+     */
     public List<Cell> getCells() {
-        return cells;
+        return Collections.unmodifiableList(cells);
+    }
+
+    CellIndex index() {
+        CellIndex index = this.index;
+        if (index == null)
+            this.index = index = new CellIndex(cells);
+        return index;
     }
 
     @Override
@@ -0,0 +1,130 @@
+package com.rcr2.cells;
+
+import com.rcr2.cells.CellFrame.Cell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The cells of a frame bucketed by the place they are at, so that the pure functions can ask whether any of them
+ * is within a few steps of a place by looking up those places rather than comparing with every cell.
+ * It also keeps the animate and inanimate cells apart, so that filtering a frame by kind is a lookup too.
+ *
+ * The buckets are the slots of an open addressing table keyed by the packed coordinates of a place.
+ * The player moves while frames holding it are still in use, so it is left out of the table and its place
+ * is read each time it is asked about
+ */
+final class CellIndex {
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final List<Cell> cells;
+
+    // each part of the index is built the first time it is needed. Frames such as the empty one are shared
+    // between threads, so a part is built in full before it is published, and the places as one immutable whole
+    private Places places;
+    private List<Cell> animate;
+    private List<Cell> inanimate;
+
+    CellIndex(List<Cell> cells) {
+        this.cells = cells;
+    }
+
+    List<Cell> animate() {
+        List<Cell> animate = this.animate;
+        return animate != null ? animate : byKind(true);
+    }
+
+    List<Cell> inanimate() {
+        List<Cell> inanimate = this.inanimate;
+        return inanimate != null ? inanimate : byKind(false);
+    }
+
+    private List<Cell> byKind(boolean animateOnes) {
+        List<Cell> animate = new ArrayList<>();
+        List<Cell> inanimate = new ArrayList<>();
+        for (Cell cell : cells) {
+            if (cell instanceof CellFrame.Animate)
+                animate.add(cell);
+            else if (cell instanceof CellFrame.Inanimate)
+                inanimate.add(cell);
+        }
+        List<Cell> animateView = Collections.unmodifiableList(animate);
+        List<Cell> inanimateView = Collections.unmodifiableList(inanimate);
+        this.animate = animateView;
+        this.inanimate = inanimateView;
+        return animateOnes ? animateView : inanimateView;
+    }
+
+    private static final class Places {
+        final long[] table;
+        final int mask;
+        final List<Cell> players;
+
+        Places(List<Cell> cells) {
+            // at most half full, so that probes stay short
+            int capacity = Integer.highestOneBit(Math.max(cells.size(), 1) * 4 - 1);
+            table = new long[Math.max(capacity, 4)];
+            mask = table.length - 1;
+            Arrays.fill(table, FREE);
+            players = new ArrayList<>();
+            for (Cell cell : cells) {
+                if (cell instanceof CellFrame.Player)
+                    players.add(cell);
+                else
+                    add(pack(cell.x, cell.y));
+            }
+        }
+
+        private void add(long place) {
+            int i = slot(place) & mask;
+            while (table[i] != FREE) {
+                if (table[i] == place)
+                    return;
+                i = (i + 1) & mask;
+            }
+            table[i] = place;
+        }
+
+        private boolean contains(int x, int y) {
+            long place = pack(x, y);
+            int i = slot(place) & mask;
+            while (table[i] != FREE) {
+                if (table[i] == place)
+                    return true;
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+    }
+
+    private static long pack(int x, int y) {
+        return (long) x << 32 | (y & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long place) {
+        long h = place * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Whether any cell is at most {@code radius} steps from {@code x}, {@code y}, counting steps as {@link Cell#distanceFrom} does
+     */
+    boolean anyWithin(int x, int y, int radius) {
+        Places places = this.places;
+        if (places == null)
+            this.places = places = new Places(cells);
+        for (Cell player : places.players)
+            if (Math.abs(player.x - x) + Math.abs(player.y - y) <= radius)
+                return true;
+        for (int dx = -radius; dx <= radius; dx++) {
+            int reach = radius - Math.abs(dx);
+            for (int dy = -reach; dy <= reach; dy++)
+                if (places.contains(x + dx, y + dy))
+                    return true;
+        }
+        return false;
+    }
+}
@@ -2,125 +2,258 @@ package com.rcr2.cells;
 
 import com.rcr2.Context;
 import com.rcr2.SequenceProvider;
+import lombok.Setter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 public class CellsContext extends Context<CellFrame,CellsContext> {
     public static final int CELLS_LENGTH = 10;
     public static final int CELLS_WIDTH = 10;
+
+    // what a cell looks for in the places around it
+    private static final Grid.PlaceFilter NO_GROUND = (grid, index) -> grid.ground(index) == Grid.EMPTY;
+    private static final Grid.PlaceFilter NOTHING_ABOVE = (grid, index) -> grid.above(index) == Grid.EMPTY;
+    private static final Grid.PlaceFilter UNCLAIMED_RESOURCE = (grid, index) -> grid.above(index) == Grid.EMPTY && grid.ground(index) != Grid.EMPTY;
+
     final CellFrame.Player mainCell;
 
-    final Place[][] places;
+    final Grid grid;
+    // every world has its own generator so that worlds on different threads never share one
+    final Random random;
+
+    private final TileScheduler scheduler;
+    private int tics = 0;
+    // ticks the world on the calling thread when null
+    @Setter
+    private ForkJoinPool ticPool;
 
     CellsContext(SequenceProvider<CellFrame,CellsContext> sequenceProvider, CellFrame.Player mainCell, int length, int width) {
+        this(sequenceProvider, mainCell, length, width, new Random(ThreadLocalRandom.current().nextLong()));
+    }
+
+    CellsContext(SequenceProvider<CellFrame,CellsContext> sequenceProvider, CellFrame.Player mainCell, int length, int width, Random random) {
+        this(sequenceProvider, mainCell, length, width, random, Math.max(length, width));
+    }
+
+    /**
+     * A world whose cells start out within {@code populated} places of the main cell in either direction,
+     * leaving the rest of a large world empty until cells spread there
+     */
+    CellsContext(SequenceProvider<CellFrame,CellsContext> sequenceProvider, CellFrame.Player mainCell, int length, int width, Random random, int populated) {
         super(sequenceProvider);
-        places = new Place[length][width];
+        this.random = random;
+        this.grid = new Grid(length, width);
+        this.scheduler = new TileScheduler(grid, random.nextLong());
         this.mainCell = mainCell;
-        Place mainPlace = new Place(mainCell.x, mainCell.y);
-        mainPlace.above = mainCell;
-        places[mainCell.x][mainCell.y] = mainPlace;
-        setCells();
+        grid.placePlayer(grid.index(mainCell.x, mainCell.y));
+        setCells(populated);
     }
 
-    private void setCells() {
-        for (int i = 0; i < places.length; i++) {
-            Place[] row = places[i];
-            for (int j = 0; j < row.length; j++) {
-                Place place = row[j];
-                if (place == null) {
-                    place = new Place(i, j);
-                    places[i][j] = place;
-                }
-
-                if (mainCell.x == i && mainCell.y == j)
+    private void setCells(int populated) {
+        int il = Math.max(mainCell.x - populated, 0);
+        int ir = Math.min(mainCell.x + populated, grid.length - 1);
+        int jt = Math.max(mainCell.y - populated, 0);
+        int jb = Math.min(mainCell.y + populated, grid.width - 1);
+        for (int i = il; i <= ir; i++) {
+            for (int j = jt; j <= jb; j++) {
+                if (i == mainCell.x && j == mainCell.y)
                     continue;
 
-                if (ThreadLocalRandom.current().nextInt(0, 10) < 2)
-                    place.above = new CellFrame.Animate(i, j);
-                if (ThreadLocalRandom.current().nextInt(0, 10) < 7)
-                    place.ground = new CellFrame.Inanimate(i, j);
+                int index = grid.index(i, j);
+                if (random.nextInt(10) < 2)
+                    grid.placeAnimate(index, CellFrame.ANIMATE_ENERGY, tics);
+                if (random.nextInt(10) < 7)
+                    grid.placeInanimate(index, CellFrame.INANIMATE_ENERGY, tics);
+            }
+        }
+    }
+
+    /**
+     * Advance the world by one step: every cell ages and some of them eat, move or multiply.
+     * A cell acts at most once per step, and the world advances the same way whether or not it is given a pool
+     */
+    public void tic() {
+        final int tic = ++tics;
+        scheduler.tic(tic, (chunk, random) -> {
+            Grid.Chunk places = grid.chunks[chunk];
+            int first = chunk << Grid.CHUNK_BITS;
+            // chunks at the edge of the world reach past it
+            int rows = Math.min(Grid.CHUNK_SIZE, grid.length - places.x);
+            int columns = Math.min(Grid.CHUNK_SIZE, grid.width - places.y);
+            for (int x = 0; x < rows; x++) {
+                for (int offset = x << Grid.CHUNK_SHIFT, end = offset + columns; offset < end; offset++)
+                    ticPlace(places, offset, first | offset, tic, random);
+            }
+        }, ticPool);
+        grid.releaseEmptyChunks();
+    }
+
+    private void ticPlace(Grid.Chunk places, int offset, int index, int tic, Random random) {
+        if (places.above[offset] != Grid.EMPTY && places.aboveTic[offset] != tic) {
+            places.aboveTic[offset] = tic;
+            if (places.above[offset] == Grid.PLAYER) {
+                mainCell.tic();
+            } else {
+                if (++places.aboveWait[offset] == CellFrame.TIC_PERIOD) {
+                    places.aboveEnergy[offset]--;
+                    places.aboveWait[offset] = 0;
+                }
+                if (random.nextInt(4) == 0)
+                    perturbAnimate(index, tic, random);
             }
         }
+        if (places.ground[offset] == Grid.INANIMATE && places.groundTic[offset] != tic) {
+            places.groundTic[offset] = tic;
+            if (++places.groundWait[offset] == CellFrame.TIC_PERIOD) {
+                places.groundEnergy[offset] = Math.min(places.groundEnergy[offset] + 1, CellFrame.MAX_INANIMATE_ENERGY);
+                places.groundWait[offset] = 0;
+            }
+            if (random.nextInt(4) == 0)
+                perturbInanimate(index, tic, random);
+        }
+    }
+
+    private void perturbInanimate(int index, int tic, Random random) {
+        // try to multiply
+        if (grid.groundEnergy(index) > 4) {
+            int destination = grid.randomNearby(index, NO_GROUND, random);
+            if (destination < 0) return;
+
+            grid.placeInanimate(destination, CellFrame.INANIMATE_ENERGY, tic);
+            grid.addGroundEnergy(index, -3);
+        }
+    }
+
+    private void perturbAnimate(int index, int tic, Random random) {
+        if (grid.aboveEnergy(index) < 10) {
+            // try to consume
+            if (consume(index)) return;
+
+            // otherwise move to a nearby resource
+            int destination = grid.randomNearby(index, UNCLAIMED_RESOURCE, random);
+            if (destination < 0) return;
+
+            grid.moveAbove(index, destination);
+            grid.addAboveEnergy(destination, -1);
+        } else
+            multiply(index, tic, random);
     }
 
     public CellFrame successFrame() {
         return new CellFrame(mainCell);
     }
 
-    boolean move(CellFrame.Cell cell, int newX, int newY) {
-        Place newPlace = places[newX][newY];
-        if (newPlace.above != null)
+    boolean isAboveEmpty(int x, int y) {
+        return grid.above(grid.index(x, y)) == Grid.EMPTY;
+    }
+
+    boolean moveMainCell(int newX, int newY) {
+        int to = grid.index(newX, newY);
+        if (grid.above(to) != Grid.EMPTY)
             return false;
-        Place oldPlace = places[cell.x][cell.y];
-        oldPlace.above = null;
-        newPlace.above = cell;
-        cell.x = newX;
-        cell.y = newY;
+        grid.moveAbove(grid.index(mainCell.x, mainCell.y), to);
+        mainCell.x = newX;
+        mainCell.y = newY;
         return true;
     }
 
-    public List<Place> nearby(CellFrame.Cell cell) {
-        final List<Place> nearbyPlaces = new ArrayList<>();
-        final int il = cell.x - 1 >= 0 ? cell.x - 1 : 0;
-        final int ir = cell.x < places.length - 1 ? cell.x + 1 : places.length - 1;
-        for (int i = il; i <= ir; i++) {
-            Place[] row = places[i];
-            final int jt = cell.y - 1 >= 0 ? cell.y - 1 : 0;
-            final int jb = cell.y < row.length - 1 ? cell.y + 1 : row.length - 1;
-            for (int j = jt; j <= jb; j++) {
-                Place place = places[i][j];
-                if (place != null)
-                    nearbyPlaces.add(place);
+    /**
+     * The cells at most one step away from {@code cell} in either direction, including those at its own place.
+     * The main cell is returned as is, every other cell as a copy of its current state
+     */
+    public List<CellFrame.Cell> nearby(CellFrame.Cell cell) {
+        final List<CellFrame.Cell> cells = new ArrayList<>();
+        grid.forEachNearby(grid.index(cell.x, cell.y), index -> {
+            int x = grid.x(index);
+            int y = grid.y(index);
+            if (grid.above(index) == Grid.PLAYER) {
+                cells.add(mainCell);
             }
-        }
-        return nearbyPlaces;
+            else if (grid.above(index) == Grid.ANIMATE) {
+                CellFrame.Animate animate = new CellFrame.Animate(x, y);
+                animate.energy = grid.aboveEnergy(index);
+                cells.add(animate);
+            }
+            if (grid.ground(index) == Grid.INANIMATE) {
+                CellFrame.Inanimate inanimate = new CellFrame.Inanimate(x, y);
+                inanimate.energy = grid.groundEnergy(index);
+                cells.add(inanimate);
+            }
+        });
+        return cells;
     }
 
-    boolean consume(CellFrame.Animate animate) {
-        Place currentPlace = places[animate.x][animate.y];
-        if (currentPlace.ground != null) {
-            CellFrame.Inanimate inanimate = (CellFrame.Inanimate) currentPlace.ground;
-            if (inanimate.energy > 0) {
-                inanimate.energy--;
-                animate.energy++;
-                return true;
-            }
+    boolean consumeMainCell() {
+        int index = grid.index(mainCell.x, mainCell.y);
+        if (grid.ground(index) != Grid.EMPTY && grid.groundEnergy(index) > 0) {
+            grid.addGroundEnergy(index, -1);
+            mainCell.energy++;
+            return true;
         }
+        return false;
+    }
 
+    private boolean consume(int index) {
+        if (grid.ground(index) != Grid.EMPTY && grid.groundEnergy(index) > 0) {
+            grid.addGroundEnergy(index, -1);
+            grid.addAboveEnergy(index, 1);
+            return true;
+        }
         return false;
     }
 
-    boolean multiply(CellFrame.Animate animate) {
+    private boolean multiply(int index, int tic, Random random) {
         // try to multiply
-        List<Place> destinations = nearby(animate)
-                .stream()
-                .filter(place -> place.above == null)
-                .collect(Collectors.toList());
-
-        if (destinations.isEmpty()) return false;
-
-        destinations
-                .stream()
-                .skip(ThreadLocalRandom.current().nextInt(0, destinations.size()))
-                .findFirst()
-                .ifPresent(place -> {
-                    place.above = new CellFrame.Animate(place.x, place.y);
-                    animate.energy = 1;
-                });
+        int destination = grid.randomNearby(index, NOTHING_ABOVE, random);
+        if (destination < 0) return false;
 
+        grid.placeAnimate(destination, CellFrame.ANIMATE_ENERGY, tic);
+        grid.setAboveEnergy(index, 1);
         return true;
     }
 
+    /**
+     * Draw the whole world, one row of places per line
+     */
+    String displayWorld() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < grid.width; j++) {
+                int index = grid.index(i, j);
+                builder.append(Place.display(grid.above(index) == Grid.PLAYER,
+                        grid.above(index) != Grid.EMPTY,
+                        grid.ground(index) != Grid.EMPTY));
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Draw the places holding {@code cells}, within the smallest rectangle of the world that contains them all
+     */
     static String displayCells(List<CellFrame.Cell> cells) {
-        Place[][] places = new Place[CELLS_LENGTH][CELLS_WIDTH];
+        if (cells.isEmpty())
+            return "";
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE;
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
         for (CellFrame.Cell cell : cells) {
-            Place place = places[cell.x][cell.y];
+            minX = Math.min(minX, cell.x);
+            maxX = Math.max(maxX, cell.x);
+            minY = Math.min(minY, cell.y);
+            maxY = Math.max(maxY, cell.y);
+        }
+
+        Place[][] places = new Place[maxX - minX + 1][maxY - minY + 1];
+        for (CellFrame.Cell cell : cells) {
+            Place place = places[cell.x - minX][cell.y - minY];
             if (place == null) {
                 place = new Place(cell.x, cell.y);
-                places[cell.x][cell.y] = place;
+                places[cell.x - minX][cell.y - minY] = place;
             }
             if (cell instanceof CellFrame.Animate)
                 place.above = cell;
@@ -169,15 +302,19 @@ public class CellsContext extends Context<CellFrame,CellsContext> {
 
         @Override
         public String toString() {
-            if (above != null && above instanceof CellFrame.Player && ground != null)
+            return display(above instanceof CellFrame.Player, above != null, ground != null);
+        }
+
+        static String display(boolean main, boolean aboveOccupied, boolean groundOccupied) {
+            if (main && groundOccupied)
                 return MAIN_AND_GROUND;
-            else if (ground != null && above != null)
+            else if (groundOccupied && aboveOccupied)
                 return BOTH_OCCUPIED;
-            else if (above != null && above instanceof CellFrame.Player)
+            else if (main)
                 return ABOVE_MAIN;
-            else if (ground != null)
+            else if (groundOccupied)
                 return GROUND_OCCUPIED;
-            else if (above != null)
+            else if (aboveOccupied)
                 return ABOVE_OCCUPIED;
             return EMPTY_PLACE;
         }
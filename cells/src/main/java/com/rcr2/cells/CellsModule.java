@@ -3,15 +3,16 @@ package com.rcr2.cells;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
 import com.amazonaws.services.dynamodbv2.model.*;
 import com.amazonaws.services.dynamodbv2.util.TableUtils;
 import com.google.inject.*;
 import com.rcr2.FrameProvider;
 import com.rcr2.Persistence;
 import com.rcr2.SequenceProvider;
+import com.rcr2.impl.CachingPersistence;
 import com.rcr2.impl.DynamoDBPersistence;
 import com.rcr2.impl.InMemorySequenceProvider;
+import com.rcr2.impl.WriteBehindPersistence;
 import lombok.val;
 
 import static com.rcr2.impl.DynamoDBPersistence.FEEDBACK_STATS_TABLE;
@@ -20,6 +21,10 @@ import static com.rcr2.impl.DynamoDBPersistence.SUBSEQUENT_STATEMENT_KEY;
 
 public class CellsModule extends AbstractModule {
 
+    static final int CACHED_STATES = 10_000;
+    // bounds how long stats written by other sessions sharing the table stay invisible
+    static final long CACHE_TTL_MILLIS = 60_000;
+
     public static void main(String[] args) {
         val injector = Guice.createInjector(new CellsModule());
         val session = injector.getInstance(CellSession.class);
@@ -92,7 +97,14 @@ public class CellsModule extends AbstractModule {
     @Singleton
     @Inject
     Persistence<CellFrame,CellsContext> persistence(AmazonDynamoDB dynamoDB) {
-        return new DynamoDBPersistence<>(new DynamoDBMapper(dynamoDB));
+        // the cache sits below the write buffer so that it is invalidated when observations are actually written
+        return new WriteBehindPersistence<>(
+            new CachingPersistence<>(
+                new DynamoDBPersistence<CellFrame,CellsContext>(dynamoDB),
+                CACHED_STATES,
+                CACHE_TTL_MILLIS
+            )
+        );
     }
 
     @Provides
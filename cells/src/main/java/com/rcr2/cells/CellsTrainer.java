@@ -0,0 +1,59 @@
+package com.rcr2.cells;
+
+import com.rcr2.Persistence;
+import com.rcr2.Session;
+import com.rcr2.impl.BatchRunner;
+import com.rcr2.impl.ConcurrentInMemoryPersistence;
+import com.rcr2.impl.InMemorySequenceProvider;
+import com.rcr2.impl.MappedLogPersistence;
+import lombok.val;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Trains without a human in the loop, scoring steps by the main cell's energy.
+ *
+ * Usage: CellsTrainer [episodes] [steps per episode] [threads] [directory].
+ * Episodes run in parallel, each in a world of its own, sharing stats kept in memory.
+ * Stats are kept in the given directory instead, which only a single thread can write to
+ */
+public class CellsTrainer {
+
+    static final int DEFAULT_EPISODES = 100;
+    static final int DEFAULT_STEPS = 1_000;
+
+    public static void main(String[] args) {
+        val episodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EPISODES;
+        val steps = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_STEPS;
+        val threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        if (args.length > 3 && threads != 1)
+            throw new IllegalArgumentException("Stats kept in a directory can only be trained with 1 thread");
+        final Persistence<CellFrame,CellsContext> persistence = args.length > 3
+                ? new MappedLogPersistence<CellFrame,CellsContext>(Paths.get(args[3]))
+                : new ConcurrentInMemoryPersistence<CellFrame,CellsContext>();
+
+        val runner = new BatchRunner<CellFrame,CellsContext>(() -> newEpisode(persistence), session -> session.getContext().tic());
+        runner.setEpisodeOver(session -> session.getContext().mainCell.energy <= 0);
+        final BatchRunner.Report report;
+        if (threads == 1) {
+            report = runner.run(episodes, steps);
+        } else {
+            val pool = new ForkJoinPool(threads);
+            report = runner.run(episodes, steps, pool);
+            pool.shutdown();
+        }
+        persistence.close();
+        System.out.println(report);
+    }
+
+    static Session<CellFrame,CellsContext> newEpisode(Persistence<CellFrame,CellsContext> persistence) {
+        val mainCell = new CellFrame.Player(CellsContext.CELLS_LENGTH / 2, CellsContext.CELLS_WIDTH / 2);
+        val context = new CellsContext(new InMemorySequenceProvider<>(), mainCell, CellsContext.CELLS_LENGTH, CellsContext.CELLS_WIDTH);
+        Functions.setContextFunctions(context);
+        val text = new CellFrame(mainCell);
+        val session = new Session<CellFrame,CellsContext>(text, new EnergyFeedback(mainCell), context, persistence, () -> new CellFrame(mainCell));
+        session.setText(text);
+        return session;
+    }
+}
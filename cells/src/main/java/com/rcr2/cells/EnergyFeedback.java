@@ -0,0 +1,31 @@
+package com.rcr2.cells;
+
+import com.rcr2.Feedback;
+
+/**
+ * Scores every step by how much energy the main cell gained since the previous one
+ */
+public class EnergyFeedback implements Feedback<CellFrame> {
+
+    static final int FAILED_SCORE = -1;
+
+    private final CellFrame.Player mainCell;
+    private int lastEnergy;
+
+    public EnergyFeedback(CellFrame.Player mainCell) {
+        this.mainCell = mainCell;
+        this.lastEnergy = mainCell.energy;
+    }
+
+    @Override
+    public int score(CellFrame previous, CellFrame currentFrame) {
+        int delta = mainCell.energy - lastEnergy;
+        lastEnergy = mainCell.energy;
+        return delta;
+    }
+
+    @Override
+    public int failed() {
+        return FAILED_SCORE;
+    }
+}
@@ -4,8 +4,6 @@ import com.rcr2.EmptyFrame;
 import com.rcr2.cells.CellFrame.Cell;
 
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 import static com.rcr2.cells.CellFrame.*;
 
@@ -29,67 +27,42 @@ public class Functions {
     public static void setContextFunctions(CellsContext context) {
         context
             .withPureFunction("nearby", 0, args -> {
-                CellFrame cellFrame = new CellFrame(context.mainCell);
-                    context.nearby(context.mainCell)
-                        .forEach(place -> {
-                            if (place.above != null)
-                                cellFrame.withCell(place.above);
-                            if (place.ground != null)
-                                cellFrame.withCell(place.ground);
-                        });
-
-                return cellFrameOptional(cellFrame);
+                return cellFrameOptional(new CellFrame(context.mainCell).withCells(context.nearby(context.mainCell)));
             });
         context.withPureFunction("threats", 1, args -> {
-                List<Cell> predators = args.get(0).getCells()
-                        .stream()
-                        .filter(cell -> cell instanceof Animate)
-                        .collect(Collectors.toList());
-
-                return cellFrameOptional(new CellFrame(context.mainCell).withCells(predators));
+                return cellFrameOptional(new CellFrame(context.mainCell).withCells(args.get(0).index().animate()));
             });
         context.withPureFunction("resources", 1, args -> {
-                List<Cell> resources = args.get(0).getCells()
-                        .stream()
-                        .filter(cell -> cell instanceof Inanimate
-                                && context.places[cell.x][cell.y].above == null)
-                        .collect(Collectors.toList());
+                List<Cell> resources = new ArrayList<>();
+                for (Cell cell : args.get(0).index().inanimate())
+                    if (context.isAboveEmpty(cell.x, cell.y))
+                        resources.add(cell);
 
                 return cellFrameOptional(new CellFrame(context.mainCell).withCells(resources));
             });
         context.withSideEffect("consume", 0, args -> {
-                return context.consume(context.mainCell)
+                return context.consumeMainCell()
                         ? Optional.of(new CellFrame(context.mainCell))
                         : Optional.empty();
             });
         context.withPureFunction("together", 2, args -> {
-                // filter l1 for items that are near at least one item in l2
-                List<Cell> l1 = args.get(0).getCells();
-                List<Cell> l2 = args.get(1).getCells();
-
-                Set<Cell> nearbyCells = new HashSet<>();
-                for (Cell cell : l1) {
-                    for (Cell other: l2) {
-                        if (cell.distanceFrom(other) < 2)
-                            nearbyCells.add(other);
-                    }
+                // filter l2 for items that are near at least one item in l1
+                CellIndex l1 = args.get(0).index();
+                Set<Cell> nearbyCells = new LinkedHashSet<>();
+                for (Cell other : args.get(1).getCells()) {
+                    if (l1.anyWithin(other.x, other.y, 1))
+                        nearbyCells.add(other);
                 }
 
                 return cellFrameOptional(new CellFrame(context.mainCell).withCells(nearbyCells));
             });
         context.withPureFunction("apart", 2, args -> {
-                // filter l1 for items that are not near any item in l2
-                List<Cell> l1 = args.get(0).getCells();
-                List<Cell> l2 = args.get(1).getCells();
-
-                Set<Cell> apartCells = new HashSet<>();
-                for (Cell cell : l1) {
-                    for (Cell other: l2) {
-                        if (cell.distanceFrom(other) > 2)
-                            apartCells.add(other);
-                        else
-                            apartCells.remove(other);
-                    }
+                // filter l2 for items that are not near any item in l1
+                CellIndex l1 = args.get(0).index();
+                Set<Cell> apartCells = new LinkedHashSet<>();
+                for (Cell other : args.get(1).getCells()) {
+                    if (!l1.anyWithin(other.x, other.y, 2))
+                        apartCells.add(other);
                 }
 
                 return cellFrameOptional(new CellFrame(context.mainCell).withCells(apartCells));
@@ -100,19 +73,19 @@ public class Functions {
                 if (cells.isEmpty())
                     return Optional.empty();
 
-                Cell target = cells.get(ThreadLocalRandom.current().nextInt(0, cells.size()));
-                return context.move(context.mainCell, target.x, target.y) ? Optional.of(context.successFrame()) : Optional.empty();
+                Cell target = cells.get(context.random.nextInt(cells.size()));
+                return context.moveMainCell(target.x, target.y) ? Optional.of(context.successFrame()) : Optional.empty();
             });
         context.withSideEffect("flee", 1, args -> {
 
                 class CandidatePlace implements Comparable<CandidatePlace> {
-                    final CellsContext.Place place;
+                    final boolean aboveEmpty;
                     final int x;
                     final int y;
                     final double distance;
 
-                    CandidatePlace(CellsContext.Place place, int x, int y, List<Cell> targets) {
-                        this.place = place;
+                    CandidatePlace(boolean aboveEmpty, int x, int y, List<Cell> targets) {
+                        this.aboveEmpty = aboveEmpty;
                         this.x = x;
                         this.y = y;
                         int cumulative = 0;
@@ -130,28 +103,27 @@ public class Functions {
                 List<Cell> targets = args.get(0).getCells();
 
                 final int il = context.mainCell.x - 1 >= 0 ? context.mainCell.x - 1 : 0;
-                final int ir = context.mainCell.x < context.places.length - 1 ? context.mainCell.x + 1 : context.places.length - 1;
+                final int ir = context.mainCell.x < context.grid.length - 1 ? context.mainCell.x + 1 : context.grid.length - 1;
 
                 // for each position surrounding main cell
                 // calculate average distance from targets
                 // move to position with greatest average
                 List<CandidatePlace> candidates = new ArrayList<>();
                 for (int i = il; i <= ir; i++) {
-                    CellsContext.Place[] row = context.places[i];
                     final int jt = context.mainCell.y - 1 >= 0 ? context.mainCell.y - 1 : 0;
-                    final int jb = context.mainCell.y < row.length - 1 ? context.mainCell.y + 1 : row.length - 1;
+                    final int jb = context.mainCell.y < context.grid.width - 1 ? context.mainCell.y + 1 : context.grid.width - 1;
 
                     for (int j = jt; j <= jb; j++)
-                        candidates.add(new CandidatePlace(row[j], i, j, targets));
+                        candidates.add(new CandidatePlace(context.isAboveEmpty(i, j), i, j, targets));
                 }
 
                 Optional<CandidatePlace> best = candidates.stream()
-                        .filter(candidate -> candidate.place.above == null)
+                        .filter(candidate -> candidate.aboveEmpty)
                         .sorted(Comparator.naturalOrder())
                         .findFirst();
 
                 if (best.isPresent()) {
-                    context.move(context.mainCell, best.get().x, best.get().y);
+                    context.moveMainCell(best.get().x, best.get().y);
                     return Optional.of(context.successFrame());
                 }
 
@@ -0,0 +1,294 @@
+package com.rcr2.cells;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The places of a world, cut into square chunks of {@link #CHUNK_SIZE} by {@link #CHUNK_SIZE} places.
+ * A chunk is only allocated once something is placed in it, so the empty regions of a large world cost
+ * a null reference per chunk and are never visited during a tic.
+ *
+ * Each place has an above layer, which is empty or holds an animate cell or the player,
+ * and a ground layer, which is empty or holds an inanimate cell.
+ * The energy of the player lives in its {@link CellFrame.Player}, every other cell's in the chunk's arrays.
+ * Each layer also remembers the last tic its cell acted in, so a cell that moves or is born during a tic waits for the next one.
+ *
+ * A place is addressed by an index holding the number of its chunk above {@link #CHUNK_BITS} bits
+ * and its offset within the chunk, {@code x * CHUNK_SIZE + y} in chunk coordinates, below them
+ */
+final class Grid {
+
+    static final byte EMPTY = 0;
+    static final byte ANIMATE = 1;
+    static final byte PLAYER = 2;
+    static final byte INANIMATE = 1;
+
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_BITS = 2 * CHUNK_SHIFT;
+    static final int CHUNK_PLACES = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_PLACES - 1;
+    private static final int COORDINATE_MASK = CHUNK_SIZE - 1;
+
+    static final class Chunk {
+        // the coordinates of the chunk's first place
+        final int x;
+        final int y;
+
+        final byte[] above = new byte[CHUNK_PLACES];
+        final int[] aboveEnergy = new int[CHUNK_PLACES];
+        final int[] aboveWait = new int[CHUNK_PLACES];
+        final int[] aboveTic = new int[CHUNK_PLACES];
+
+        final byte[] ground = new byte[CHUNK_PLACES];
+        final int[] groundEnergy = new int[CHUNK_PLACES];
+        final int[] groundWait = new int[CHUNK_PLACES];
+        final int[] groundTic = new int[CHUNK_PLACES];
+
+        // reseeded before the chunk is ticked
+        final Random random = new Random();
+
+        Chunk(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        // stops at the first cell, right away for most chunks that hold any
+        boolean isEmpty() {
+            for (int offset = 0; offset < CHUNK_PLACES; offset++)
+                if (above[offset] != EMPTY || ground[offset] != EMPTY)
+                    return false;
+            return true;
+        }
+    }
+
+    final int length;
+    final int width;
+
+    final int chunkRows;
+    final int chunkColumns;
+    final Chunk[] chunks;
+    // the numbers of the chunks allocated so far, in no particular order
+    private int[] allocated = new int[16];
+    private int allocatedCount = 0;
+
+    Grid(int length, int width) {
+        this.length = length;
+        this.width = width;
+        this.chunkRows = (length + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        this.chunkColumns = (width + CHUNK_SIZE - 1) >> CHUNK_SHIFT;
+        // so that every index is positive
+        if ((long) chunkRows * chunkColumns > 1 << (31 - CHUNK_BITS))
+            throw new IllegalArgumentException("a world of " + length + " by " + width + " places needs more than " + (1 << (31 - CHUNK_BITS)) + " chunks");
+        this.chunks = new Chunk[chunkRows * chunkColumns];
+    }
+
+    int index(int x, int y) {
+        int chunk = (x >> CHUNK_SHIFT) * chunkColumns + (y >> CHUNK_SHIFT);
+        return chunk << CHUNK_BITS | (x & COORDINATE_MASK) << CHUNK_SHIFT | (y & COORDINATE_MASK);
+    }
+
+    int x(int index) {
+        Chunk chunk = chunk(index);
+        int x = index >>> CHUNK_SHIFT & COORDINATE_MASK;
+        return chunk != null ? chunk.x + x : chunkOf(index) / chunkColumns * CHUNK_SIZE + x;
+    }
+
+    int y(int index) {
+        Chunk chunk = chunk(index);
+        int y = index & COORDINATE_MASK;
+        return chunk != null ? chunk.y + y : chunkOf(index) % chunkColumns * CHUNK_SIZE + y;
+    }
+
+    static int chunkOf(int index) {
+        return index >>> CHUNK_BITS;
+    }
+
+    static int offset(int index) {
+        return index & CHUNK_MASK;
+    }
+
+    boolean contains(int x, int y) {
+        return x >= 0 && x < length && y >= 0 && y < width;
+    }
+
+    /**
+     * @return the chunk holding {@code index}, or null if nothing was ever placed in it
+     */
+    Chunk chunk(int index) {
+        return chunks[chunkOf(index)];
+    }
+
+    private Chunk chunkForWriting(int index) {
+        Chunk chunk = chunks[chunkOf(index)];
+        if (chunk != null)
+            return chunk;
+        // tiles ticked in parallel may place cells in the same neighbouring chunk
+        synchronized (this) {
+            chunk = chunks[chunkOf(index)];
+            if (chunk == null) {
+                chunk = new Chunk(chunkOf(index) / chunkColumns * CHUNK_SIZE, chunkOf(index) % chunkColumns * CHUNK_SIZE);
+                chunks[chunkOf(index)] = chunk;
+                if (allocatedCount == allocated.length)
+                    allocated = Arrays.copyOf(allocated, allocatedCount * 2);
+                allocated[allocatedCount++] = chunkOf(index);
+            }
+            return chunk;
+        }
+    }
+
+    // the allocated chunks may only be listed between tics, while none are being allocated
+
+    int allocatedChunkCount() {
+        return allocatedCount;
+    }
+
+    int allocatedChunk(int i) {
+        return allocated[i];
+    }
+
+    /**
+     * Drop the chunks that cells have moved out of entirely, so that every chunk left holds a cell.
+     * Not safe while a tic is in progress
+     */
+    void releaseEmptyChunks() {
+        int kept = 0;
+        for (int i = 0; i < allocatedCount; i++) {
+            int chunk = allocated[i];
+            if (chunks[chunk].isEmpty())
+                chunks[chunk] = null;
+            else
+                allocated[kept++] = chunk;
+        }
+        allocatedCount = kept;
+    }
+
+    byte above(int index) {
+        Chunk chunk = chunk(index);
+        return chunk == null ? EMPTY : chunk.above[offset(index)];
+    }
+
+    byte ground(int index) {
+        Chunk chunk = chunk(index);
+        return chunk == null ? EMPTY : chunk.ground[offset(index)];
+    }
+
+    // the energy of a cell may only be read or changed where there is one, so its chunk exists
+
+    int aboveEnergy(int index) {
+        return chunk(index).aboveEnergy[offset(index)];
+    }
+
+    void addAboveEnergy(int index, int energy) {
+        chunk(index).aboveEnergy[offset(index)] += energy;
+    }
+
+    void setAboveEnergy(int index, int energy) {
+        chunk(index).aboveEnergy[offset(index)] = energy;
+    }
+
+    int groundEnergy(int index) {
+        return chunk(index).groundEnergy[offset(index)];
+    }
+
+    void addGroundEnergy(int index, int energy) {
+        chunk(index).groundEnergy[offset(index)] += energy;
+    }
+
+    void placePlayer(int index) {
+        Chunk chunk = chunkForWriting(index);
+        int offset = offset(index);
+        chunk.above[offset] = PLAYER;
+    }
+
+    /**
+     * Place a new animate cell at {@code index}, which must be empty above
+     */
+    void placeAnimate(int index, int energy, int tic) {
+        Chunk chunk = chunkForWriting(index);
+        int offset = offset(index);
+        chunk.above[offset] = ANIMATE;
+        chunk.aboveEnergy[offset] = energy;
+        chunk.aboveWait[offset] = 0;
+        chunk.aboveTic[offset] = tic;
+    }
+
+    /**
+     * Place a new inanimate cell at {@code index}, which must be empty on the ground
+     */
+    void placeInanimate(int index, int energy, int tic) {
+        Chunk chunk = chunkForWriting(index);
+        int offset = offset(index);
+        chunk.ground[offset] = INANIMATE;
+        chunk.groundEnergy[offset] = energy;
+        chunk.groundWait[offset] = 0;
+        chunk.groundTic[offset] = tic;
+    }
+
+    /**
+     * Move whatever is above {@code from} to {@code to}, which must be empty above
+     */
+    void moveAbove(int from, int to) {
+        Chunk source = chunk(from);
+        Chunk destination = chunkForWriting(to);
+        int f = offset(from);
+        int t = offset(to);
+        destination.above[t] = source.above[f];
+        destination.aboveEnergy[t] = source.aboveEnergy[f];
+        destination.aboveWait[t] = source.aboveWait[f];
+        destination.aboveTic[t] = source.aboveTic[f];
+        source.above[f] = EMPTY;
+        source.aboveEnergy[f] = 0;
+        source.aboveWait[f] = 0;
+        source.aboveTic[f] = 0;
+    }
+
+    @FunctionalInterface
+    interface PlaceFilter {
+        boolean test(Grid grid, int index);
+    }
+
+    @FunctionalInterface
+    interface PlaceVisitor {
+        void visit(int index);
+    }
+
+    /**
+     * Visit the places at most one step from {@code index} in either direction, including itself, in row order
+     */
+    void forEachNearby(int index, PlaceVisitor visitor) {
+        int x = x(index);
+        int y = y(index);
+        int il = x > 0 ? x - 1 : 0;
+        int ir = x < length - 1 ? x + 1 : length - 1;
+        int jt = y > 0 ? y - 1 : 0;
+        int jb = y < width - 1 ? y + 1 : width - 1;
+        for (int i = il; i <= ir; i++)
+            for (int j = jt; j <= jb; j++)
+                visitor.visit(index(i, j));
+    }
+
+    /**
+     * Pick one of the places at most one step from {@code index} that pass {@code filter}, each with the same chance.
+     * Reservoir sampling finds it in a single pass without collecting the candidates
+     * @return the index of the place picked, or -1 if no place passes
+     */
+    int randomNearby(int index, PlaceFilter filter, Random random) {
+        int x = x(index);
+        int y = y(index);
+        int il = x > 0 ? x - 1 : 0;
+        int ir = x < length - 1 ? x + 1 : length - 1;
+        int jt = y > 0 ? y - 1 : 0;
+        int jb = y < width - 1 ? y + 1 : width - 1;
+        int picked = -1;
+        int seen = 0;
+        for (int i = il; i <= ir; i++) {
+            for (int j = jt; j <= jb; j++) {
+                int place = index(i, j);
+                if (filter.test(this, place) && random.nextInt(++seen) == 0)
+                    picked = place;
+            }
+        }
+        return picked;
+    }
+}
@@ -0,0 +1,79 @@
+package com.rcr2.cells;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Has every allocated chunk of a {@link Grid} visited once per tic.
+ * The grid drops chunks once they hold no cells, so the time a tic takes grows with the occupied part of a world only.
+ *
+ * Chunks are coloured like a checkerboard with four colours, one per parity of their row and column.
+ * The colours are visited one after the other, and the chunks of one colour may be visited in parallel:
+ * any two of them are at least a whole chunk apart, so as long as visiting a place reads and writes only
+ * the places at most one step away, they never touch the same place.
+ *
+ * Each chunk draws from its own generator, reseeded every tic from the world seed, the tic and the chunk,
+ * and the places of a chunk are visited in row order, so a world advances the same way on any number of threads
+ */
+final class TileScheduler {
+
+    @FunctionalInterface
+    interface ChunkTicker {
+        void tic(int chunk, Random random);
+    }
+
+    private final Grid grid;
+    private final long seed;
+    // the allocated chunks of the colour being visited, reused from tic to tic
+    private int[] selected = new int[0];
+
+    TileScheduler(Grid grid, long seed) {
+        this.grid = grid;
+        this.seed = seed;
+    }
+
+    /**
+     * Visit every allocated chunk once, on the threads of {@code pool} or on the calling thread if it is null
+     */
+    void tic(int tic, ChunkTicker ticker, ForkJoinPool pool) {
+        for (int colour = 0; colour < 4; colour++) {
+            // chunks allocated while visiting the colours before are visited too. Only chunks of
+            // other colours neighbour a chunk, so whether it is allocated is settled before its colour is visited
+            int count = grid.allocatedChunkCount();
+            if (selected.length < count)
+                selected = new int[count * 2];
+            int chunks = 0;
+            for (int i = 0; i < count; i++)
+                if (colour(grid.allocatedChunk(i)) == colour)
+                    selected[chunks++] = grid.allocatedChunk(i);
+
+            // the chunks of a colour never touch each other's places, so the order they are visited in makes no difference
+            if (pool == null || chunks < 2) {
+                for (int i = 0; i < chunks; i++)
+                    ticChunk(selected[i], tic, ticker);
+            } else {
+                final int[] these = selected;
+                final int end = chunks;
+                pool.submit(() -> Arrays.stream(these, 0, end).parallel().forEach(chunk -> ticChunk(chunk, tic, ticker))).join();
+            }
+        }
+    }
+
+    private int colour(int chunk) {
+        return (chunk / grid.chunkColumns & 1) * 2 + (chunk % grid.chunkColumns & 1);
+    }
+
+    private void ticChunk(int chunk, int tic, ChunkTicker ticker) {
+        Grid.Chunk places = grid.chunks[chunk];
+        places.random.setSeed(mix(seed ^ mix(tic * 0x9E3779B97F4A7C15L + chunk)));
+        ticker.tic(chunk, places.random);
+    }
+
+    // the finalizer of SplitMix64, so that neighbouring chunks and tics get unrelated seeds
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,65 @@
+package com.rcr2.cells;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class CellFrameTest {
+
+    @Test
+    public void testIndexFollowsPlayerAfterItMoves() {
+        CellFrame.Player player = new CellFrame.Player(10, 10);
+        CellFrame frame = new CellFrame(player)
+                .withCell(player)
+                .withCell(new CellFrame.Inanimate(0, 0));
+
+        assert frame.index().anyWithin(11, 10, 1);
+        assert !frame.index().anyWithin(20, 20, 1);
+
+        player.x = 20;
+        player.y = 20;
+        assert frame.index().anyWithin(20, 21, 1);
+        assert !frame.index().anyWithin(11, 10, 1);
+        assert frame.index().anyWithin(1, 0, 1);
+    }
+
+    @Test
+    public void testCellsAreReadOnly() {
+        CellFrame frame = new CellFrame().withCell(new CellFrame.Inanimate(0, 0));
+        try {
+            frame.getCells().add(new CellFrame.Inanimate(5, 5));
+            assert false;
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assert !frame.index().anyWithin(5, 5, 0);
+    }
+
+    @Test
+    public void testIndexSharedBetweenThreads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 500; round++) {
+                // a frame that is shared between episodes, its index not yet built
+                CellFrame frame = new CellFrame().withCell(new CellFrame.Inanimate(3, 3)).withCell(new CellFrame.Animate(7, 7));
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> answers = new ArrayList<>();
+                for (int thread = 0; thread < 4; thread++)
+                    answers.add(pool.submit(() -> {
+                        start.await();
+                        return frame.index().anyWithin(3, 4, 1)
+                                && !frame.index().anyWithin(0, 0, 1)
+                                && frame.index().animate().size() == 1
+                                && frame.index().inanimate().size() == 1;
+                    }));
+                start.countDown();
+                for (Future<Boolean> answer : answers)
+                    assert answer.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
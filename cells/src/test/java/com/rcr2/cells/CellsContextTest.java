@@ -0,0 +1,38 @@
+package com.rcr2.cells;
+
+import com.rcr2.impl.InMemorySequenceProvider;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class CellsContextTest {
+
+    private static CellsContext world(long seed, ForkJoinPool pool) {
+        // wide enough for several chunks of every colour to be visited in parallel
+        CellsContext context = new CellsContext(new InMemorySequenceProvider<>(), new CellFrame.Player(150, 120), 300, 250, new Random(seed));
+        context.setTicPool(pool);
+        return context;
+    }
+
+    @Test
+    public void testSameSeedSameWorldOnAnyPool() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CellsContext serial = world(42, null);
+            CellsContext parallel = world(42, pool);
+            CellsContext other = world(43, null);
+            for (int tic = 0; tic < 50; tic++) {
+                serial.tic();
+                parallel.tic();
+                other.tic();
+            }
+
+            assert serial.displayWorld().equals(parallel.displayWorld());
+            assert serial.mainCell.energy == parallel.mainCell.energy;
+            assert !serial.displayWorld().equals(other.displayWorld());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -12,10 +12,20 @@ public class Context<F extends Frame<F>, C extends Context<F,C>> {
 
     StateNodeTree stateTree = new StateNodeTree();
 
+    @Getter StatementInterner statements = new StatementInterner();
+
     StateNodeTree.StateNode find(SessionInput<F,C> sessionInput) {
         return stateTree.find(sessionInput.dependsOn());
     }
 
+    /**
+     * Bound the number of states kept, dropping the least recently visited ones once there are more.
+     * Defaults to {@link StateNodeTree#DEFAULT_MAX_NODES}
+     */
+    public void setMaxStates(int maxStates) {
+        stateTree.setMaxNodes(maxStates);
+    }
+
     SequenceProvider<F,C> sequenceProvider;
 
     @AllArgsConstructor
@@ -0,0 +1,100 @@
+package com.rcr2;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.val;
+
+import java.util.*;
+
+import static com.rcr2.Session.DEFAULT_STATE_SERIALIZATION;
+
+/**
+ * Picks the next step of an imitator from the stats of the state of its working memory,
+ * backing off to the states around it when those are thin.
+ *
+ * States are keyed as {@link com.rcr2.impl.AbstractPersistence#update} keys them: the statements of the entries
+ * in scope, sorted and joined. The candidates are the state all of them leave, the states left by fewer and fewer
+ * of the newest of them, down to the text every chain starts from, and the states left when a statement that has
+ * gone out of scope stands in for the oldest of them.
+ * The stats of all of them are looked up in one call to the persistence and merged: the current state
+ * counts in full, each step left out counts {@code ancestorWeight} times the state with it, and related states
+ * count {@code relatedWeight}. A few observations of the current state so outweigh many of a shorter one,
+ * while a state never seen before still gets a step learned elsewhere rather than a random one.
+ *
+ * The candidates do not come from the {@link StateNodeTree}: its paths are of dependencies rather than statements,
+ * so they never name a state the persistence has stats for. Neither {@link StateNodeTree#abstractlyRelated}
+ * nor {@link Session#serializeCurrentState()} is on the path of {@link Session#imitatorStep()}
+ */
+@Getter @Setter
+public class DecisionEngine {
+
+    public static final int DEFAULT_MIN_OBSERVATIONS = 2;
+    public static final double DEFAULT_ANCESTOR_WEIGHT = 0.5;
+    public static final double DEFAULT_RELATED_WEIGHT = 0.25;
+
+    /**
+     * The weighted number of observations a step needs before it is picked
+     */
+    int minObservations = DEFAULT_MIN_OBSERVATIONS;
+    double ancestorWeight = DEFAULT_ANCESTOR_WEIGHT;
+    double relatedWeight = DEFAULT_RELATED_WEIGHT;
+
+    /**
+     * @return the script of the best next step, or null if no candidate state has been observed often enough
+     */
+    public <F extends Frame<F>, C extends Context<F,C>> String nextBest(Session<F,C> session) {
+        val weights = candidates(session);
+        val states = new ArrayList<String>(weights.keySet());
+        val stateWeights = new double[states.size()];
+        for (int i = 0; i < stateWeights.length; i++)
+            stateWeights[i] = weights.get(states.get(i));
+        return session.persistence.bestFor(states, stateWeights, minObservations);
+    }
+
+    /**
+     * The candidate states and their weights, longest first
+     */
+    <F extends Frame<F>, C extends Context<F,C>> Map<String,Double> candidates(Session<F,C> session) {
+        // the statements of the entries in scope oldest first, the steps they were made at, and those of older entries
+        val scoped = new ArrayList<String>();
+        val steps = new ArrayList<Integer>();
+        val older = new ArrayList<String>();
+        int afterStep = session.getCurrentStep() - Session.MAX_SIZE_IN_SCOPE;
+        for (val entry : session.getWorkingMemory()) {
+            val statement = entry.getSessionInput().serializeStatement();
+            if (entry.getStep() > afterStep) {
+                scoped.add(statement);
+                steps.add(entry.getStep());
+            } else {
+                older.add(statement);
+            }
+        }
+
+        val weights = new LinkedHashMap<String,Double>();
+        double weight = 1;
+        for (int from = 0; from < scoped.size(); from = nextStep(steps, from)) {
+            weights.merge(WorkingMemory.stateKey(scoped.subList(from, scoped.size())), weight, Math::max);
+            weight *= ancestorWeight;
+        }
+        weights.merge(DEFAULT_STATE_SERIALIZATION, weight, Math::max);
+
+        int second = nextStep(steps, 0);
+        if (relatedWeight > 0 && second < scoped.size()) {
+            // any statement gone out of scope can stand in for the oldest step
+            for (val statement : older) {
+                val related = new ArrayList<String>(scoped.subList(second, scoped.size()));
+                related.add(statement);
+                weights.merge(WorkingMemory.stateKey(related), relatedWeight, Math::max);
+            }
+        }
+        return weights;
+    }
+
+    // the index of the first statement made at a later step than the one at from
+    private static int nextStep(List<Integer> steps, int from) {
+        int next = from;
+        while (next < steps.size() && steps.get(next).equals(steps.get(from)))
+            next++;
+        return next;
+    }
+}
@@ -1,13 +1,40 @@
 package com.rcr2;
 
+import java.util.List;
+
 public interface Persistence<F extends Frame<F>, C extends Context<F,C>> {
 
     String bestFor(String currentState, int minObservations);
 
+    /**
+     * The best script over several states at once, the stats of {@code states[i]} counting {@code weights[i]} times.
+     * By default the states are tried one by one, in order, until one has a best
+     */
+    default String bestFor(List<String> states, double[] weights, int minObservations) {
+        for (String state : states) {
+            String best = bestFor(state, minObservations);
+            if (best != null)
+                return best;
+        }
+        return null;
+    }
+
     void update(Session<F,C> workingMemory, int score);
 
     void update(Session<F,C> workingMemory, SessionInput<F,C> sideEffectInput, int score);
 
+    /**
+     * Block until every observation accepted by {@link #update} has been stored
+     */
+    default void flush() {}
+
+    /**
+     * Flush any pending observations and release resources held by this persistence
+     */
+    default void close() {
+        flush();
+    }
+
     interface FeedbackStats extends Comparable<FeedbackStats> {
         Integer getCount();
         String getPriorStatement();
@@ -15,6 +42,14 @@ public interface Persistence<F extends Frame<F>, C extends Context<F,C>> {
         double getExpectedValue();
         void increment(int value);
 
+        /**
+         * Stats that no longer change, for reading several of them consistently.
+         * Only stats that are updated while they are read need to copy themselves
+         */
+        default FeedbackStats snapshot() {
+            return this;
+        }
+
         default int compareTo(Persistence.FeedbackStats o) {
             return -1 * Double.compare(this.getExpectedValue(), o.getExpectedValue());
         }
@@ -1,11 +1,16 @@
 package com.rcr2;
 
+import lombok.Setter;
 import lombok.val;
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.misc.NotNull;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static com.rcr2.Session.DEFAULT_STATE_SERIALIZATION;
@@ -13,8 +18,62 @@ import static com.rcr2.Session.IN_SEQUENCE_ALIAS_MARKER;
 
 public class Script {
 
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
     private ParseTreeWalker parseTreeWalker = new ParseTreeWalker();
 
+    // whether ANTLR prints the syntax errors it recovers from to stderr
+    @Setter
+    private boolean reportSyntaxErrors = true;
+
+    // parsed statements by input, kept apart for sequences because their aliases and args are renamed
+    private final Map<String,Template> templates;
+    private final Map<String,Template> inSequenceTemplates;
+
+    public Script() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize the number of parsed statements to keep per cache, 0 to parse every input
+     */
+    public Script(int cacheSize) {
+        this.templates = newCache(cacheSize);
+        this.inSequenceTemplates = newCache(cacheSize);
+    }
+
+    private static Map<String,Template> newCache(int maxSize) {
+        return new LinkedHashMap<String,Template>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Template> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * What parsing a statement yields before it is bound to a session
+     */
+    private static class Template {
+        final String function;
+        final String alias;
+        final List<String> args;
+
+        Template(SessionInput<?,?> sessionInput) {
+            this.function = sessionInput.getFunction();
+            this.alias = sessionInput.alias;
+            this.args = new ArrayList<>(sessionInput.getArgs());
+        }
+
+        <F extends Frame<F>, C extends Context<F,C>> SessionInput<F,C> bind(Session<F,C> session) {
+            val sessionInput = new SessionInput<F,C>(session);
+            sessionInput.setFunction(function);
+            sessionInput.setAlias(alias);
+            sessionInput.setArgs(new ArrayList<>(args));
+            return sessionInput;
+        }
+    }
+
     public <F extends Frame<F>, C extends Context<F,C>> SessionInput<F,C> processStatement(
             @NotNull Session<F,C> session,
             @NotNull String input) {
@@ -25,13 +84,25 @@ public class Script {
             @NotNull Session<F,C> session,
             @NotNull String input,
             boolean isInSequence) {
-        val lexer = new Rcr2Lexer(new ANTLRInputStream(input));
-        val tokenStream = new CommonTokenStream(lexer);
-        val parser = new Rcr2Parser(tokenStream);
-        val statementContext = parser.statement();
-        val statementListener = new StatementListener<F,C>(session);
-        parseTreeWalker.walk(statementListener, statementContext);
-        val sessionInput = statementListener.getSessionInput();
+        val cache = isInSequence ? inSequenceTemplates : templates;
+        Template template = cache.get(input);
+        if (template == null) {
+            template = new Template(parse(session, input, isInSequence));
+            cache.put(input, template);
+        }
+        val sessionInput = template.bind(session);
+        validate(sessionInput, session, session.context);
+        sessionInput.init();
+        return sessionInput;
+    }
+
+    private <F extends Frame<F>, C extends Context<F,C>> SessionInput<F,C> parse(
+            Session<F,C> session,
+            String input,
+            boolean isInSequence) {
+        SessionInput<F,C> sessionInput = StatementParser.parse(session, input);
+        if (sessionInput == null)
+            sessionInput = parseWithAntlr(session, input);
         // don't accidentally overwrite an existing variable
         if (isInSequence) {
             sessionInput.setAlias(IN_SEQUENCE_ALIAS_MARKER + sessionInput.getAlias().get());
@@ -42,11 +113,23 @@ public class Script {
                         .collect(Collectors.toList())
             );
         }
-        validate(sessionInput, session, session.context);
-        sessionInput.init();
         return sessionInput;
     }
 
+    <F extends Frame<F>, C extends Context<F,C>> SessionInput<F,C> parseWithAntlr(Session<F,C> session, String input) {
+        val lexer = new Rcr2Lexer(new ANTLRInputStream(input));
+        val tokenStream = new CommonTokenStream(lexer);
+        val parser = new Rcr2Parser(tokenStream);
+        if (!reportSyntaxErrors) {
+            lexer.removeErrorListeners();
+            parser.removeErrorListeners();
+        }
+        val statementContext = parser.statement();
+        val statementListener = new StatementListener<F,C>(session);
+        parseTreeWalker.walk(statementListener, statementContext);
+        return statementListener.getSessionInput();
+    }
+
     private void validate(SessionInput sessionInput,
                           Session workingMemory,
                           Context context) {
@@ -6,7 +6,6 @@ import org.antlr.v4.runtime.misc.NotNull;
 
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 @NoArgsConstructor
 public class Session<F extends Frame<F>, C extends Context<F,C>> {
@@ -17,14 +16,18 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
     protected Persistence<F,C> persistence;
     protected F currentFrame;
     protected FrameProvider<F> frameProvider;
+    @Getter
     protected C context;
 
     @Getter @NonFinal
     int currentStep = 0;
 
-    @Getter final Map<String,Entry<F,C>> entriesByAlias = new HashMap<>();
-    final Map<String,Entry<F,C>> entriesBySerialization = new HashMap<>();
+    @Getter final WorkingMemory<F,C> workingMemory = new WorkingMemory<>(MAX_ARCHIVE_SIZE);
+    // reused to gather the entries in scope
+    @SuppressWarnings("unchecked")
+    private final Entry<F,C>[] scope = new Entry[MAX_SIZE_IN_SCOPE];
     @Getter @Setter F text;
+    @Getter final DecisionEngine decisions = new DecisionEngine();
     long perturbIndex = 0;
 
     public Session(F text, Feedback<F> feedback, C context, Persistence<F,C> persistence, FrameProvider<F> frameProvider) {
@@ -34,8 +37,7 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
         this.persistence = persistence;
         this.frameProvider = frameProvider;
         Entry<F,C> textEntry = new Entry<>(new TextInput<>(this), text, currentStep, false);
-        this.entriesBySerialization.put(DEFAULT_STATE_SERIALIZATION, textEntry);
-        this.entriesByAlias.put(DEFAULT_STATE_SERIALIZATION, textEntry);
+        this.workingMemory.add(textEntry);
     }
 
     public Optional<F> imitatedStep(String input) {
@@ -61,14 +63,20 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
     }
 
     public Optional<F> imitatorStep() {
-        // getFrame the current state key
-        val currentState = this.serializeCurrentState();
-        String nextBest = persistence.bestFor(currentState, 2);
+        // the best step learned for the current state or the states around it
+        String nextBest = decisions.nextBest(this);
         if (nextBest == null)
             nextBest = this.perturb();
         return step(script.processStatement(this, nextBest), false);
     }
 
+    /**
+     * Whether syntax errors the parser recovers from are printed to stderr, which is the default
+     */
+    public void setReportSyntaxErrors(boolean reportSyntaxErrors) {
+        script.setReportSyntaxErrors(reportSyntaxErrors);
+    }
+
     public static final String IN_SEQUENCE_ALIAS_MARKER = "__";
 
     private Optional<F> step(SessionInput<F,C> sessionInput, boolean inSequence) {
@@ -105,13 +113,7 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
     }
 
     private void removeInSequenceEntries() {
-        val toRemove = new ArrayList<String>();
-        for (val entry: entriesByAlias.values()) {
-            if (entry.isInSequence() && entry.getSessionInput().getAlias().isPresent())
-                toRemove.add(entry.getSessionInput().getAlias().get());
-        }
-        for (val key : toRemove)
-            entriesByAlias.remove(key);
+        workingMemory.removeInSequence();
     }
 
     public static final String DEFAULT_STATE_SERIALIZATION = "text";
@@ -141,38 +143,20 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
 
     }
 
-    private Map.Entry<String,Entry<F,C>> mostRecentEntry() {
-        return this.entriesByAlias
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue())
-                .findFirst()
-                .orElse(null);
-    }
-
-    private Map.Entry<String,Entry<F,C>> leastRecentEntry(Map<String,Entry<F,C>> map) {
-        return map
-                .entrySet()
-                .stream()
-                .sorted(Comparator.comparingInt(a -> a.getValue().getStep())) // reverse order
-                .findFirst()
-                .orElse(null);
-    }
-
     private Entry<F,C> getEntry(String arg) {
-        return entriesByAlias.getOrDefault(arg, entriesBySerialization.get(arg));
+        val entry = workingMemory.byAlias(arg);
+        if (entry != null)
+            return entry;
+        val statement = context.getStatements().lookup(arg);
+        return statement != null ? workingMemory.byStatement(statement) : null;
     }
 
     public String serializePrevious(String arg) {
         val entry = getEntry(arg);
 
         if (entry != null) {
-            String serialization = this.entriesByAlias.values()
-                    .stream()
-                    .filter(e -> e.getStep() <= entry.getStep() && e.getStep() > currentStep - MAX_SIZE_IN_SCOPE)
-                    .map(e -> e.getSessionInput().serializeStatement())
-                    .sorted(Comparator.naturalOrder())
-                    .collect(Collectors.joining(","));
+            // the entries in scope up to this one, cached by the working memory until it changes
+            String serialization = workingMemory.stateKey(entry.getStep(), currentStep - MAX_SIZE_IN_SCOPE);
 
             return serialization == null || serialization.equals("")
                     ? DEFAULT_STATE_SERIALIZATION
@@ -183,7 +167,7 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
     }
 
     public void logFailureToMostRecent(SessionInput<F,C> failedInput, int feedback) {
-        mostRecentEntry().getValue().failures.add(new Entry.Failure<>(failedInput, feedback));
+        workingMemory.mostRecent().failures.add(new Entry.Failure<>(failedInput, feedback));
     }
 
     public void addStep(SessionInput<F,C> sessionInput, F result, boolean inSequence) {
@@ -192,23 +176,15 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
         if (!inSequence)
             currentStep++;
 
-        entriesByAlias.put(entry.sessionInput.alias, entry);
-        entriesBySerialization.put(entry.sessionInput.serializeStatement(), entry);
-        if (entriesByAlias.size() > MAX_ARCHIVE_SIZE) {
-//            tryToRemoveEntry(entriesByAlias);
-            entriesByAlias.remove(leastRecentEntry(entriesByAlias).getKey());
-        }
-        if (entriesBySerialization.size() > MAX_ARCHIVE_SIZE) {
-//            tryToRemoveEntry(entriesBySerialization);
-            entriesBySerialization.remove(leastRecentEntry(entriesBySerialization).getKey());
-        }
+        // the oldest entry is evicted once the working memory is full
+        workingMemory.add(entry);
     }
 
     public String serializeCurrentState() {
-        if (entriesByAlias.isEmpty()) {
+        if (workingMemory.isEmpty()) {
             return DEFAULT_STATE_SERIALIZATION;
         } else {
-            val current = entriesByAlias.get(mostRecentEntry().getKey()).sessionInput;
+            val current = workingMemory.mostRecent().sessionInput;
             return context.find(current).serialize();
         }
     }
@@ -225,8 +201,8 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
         }
 
         @Override
-        public String serializeStatement() {
-            return DEFAULT_STATE_SERIALIZATION;
+        public Statement getStatement() {
+            return context.getStatements().text();
         }
     }
 
@@ -278,21 +254,13 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
         }
         scriptBuilder.append(entry.getName());
 
-        val candidateArgs = this.entriesByAlias.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue())
-                .limit(MAX_SIZE_IN_SCOPE)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+        int candidateArgs = workingMemory.mostRecent(scope);
 
         for (int a = 0; a < entry.arity; a ++) {
             scriptBuilder.append(" ");
-            String arg = candidateArgs
-                    .stream()
-                    .skip(ThreadLocalRandom.current()
-                            .nextInt(0, candidateArgs.size()))
-                    .findFirst()
-                    .orElse(DEFAULT_STATE_SERIALIZATION);
+            String arg = candidateArgs > 0
+                    ? scope[ThreadLocalRandom.current().nextInt(0, candidateArgs)].sessionInput.alias
+                    : DEFAULT_STATE_SERIALIZATION;
             scriptBuilder.append(arg);
         }
 
@@ -302,15 +270,16 @@ public class Session<F extends Frame<F>, C extends Context<F,C>> {
     }
 
     public String display() {
-        return this.entriesByAlias.entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue())
-                .limit(MAX_SIZE_IN_SCOPE)
-                .map(Map.Entry::getValue)
-                .map(entry -> entry.getStep()
-                        + "\t" + entry.getSessionInput().getAlias().get()
-                        + "\t" + entry.getSessionInput().serializeStatement())
-                .collect(Collectors.joining("\n"));
+        val builder = new StringBuilder();
+        int entries = workingMemory.mostRecent(scope);
+        for (int i = 0; i < entries; i++) {
+            if (i > 0)
+                builder.append("\n");
+            builder.append(scope[i].getStep())
+                    .append("\t").append(scope[i].getSessionInput().getAlias().get())
+                    .append("\t").append(scope[i].getSessionInput().serializeStatement());
+        }
+        return builder.toString();
     }
 
 }
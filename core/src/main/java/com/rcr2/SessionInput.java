@@ -2,10 +2,10 @@ package com.rcr2;
 
 import lombok.Getter;
 import lombok.Setter;
+import lombok.val;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class SessionInput<F extends Frame<F>, C extends Context<F,C>> {
 
@@ -20,7 +20,8 @@ public class SessionInput<F extends Frame<F>, C extends Context<F,C>> {
     protected final Session<F,C> session;
     protected final Context<F,C> context;
 
-    private String serialization;
+    private Statement statement;
+    private SortedSet<String> dependencies;
 
     public SessionInput(Session<F,C> session) {
         this.session = session;
@@ -28,7 +29,8 @@ public class SessionInput<F extends Frame<F>, C extends Context<F,C>> {
     }
 
     public void init() {
-        this.serialization = this.serializeStatement();
+        this.statement = this.getStatement();
+        this.dependencies = dependenciesOf(statement);
     }
 
     public void addArg(String arg) {
@@ -41,13 +43,20 @@ public class SessionInput<F extends Frame<F>, C extends Context<F,C>> {
 
     /**
      * Get the args of this sessionInput in serialized form,
-     * and concatenate with the args of all children
+     * and concatenate with the args of all children.
+     * Built once per input, from the dependencies its statement memoizes
      */
     public SortedSet<String> dependsOn() {
-        return Stream.concat(args.stream().map(arg -> session.getInput(arg).serializeStatement()),
-                      args.stream().flatMap(arg -> session.getInput(arg).dependsOn().stream()))
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.toCollection(TreeSet::new));
+        if (this.dependencies == null)
+            this.dependencies = dependenciesOf(getStatement());
+        return this.dependencies;
+    }
+
+    private static SortedSet<String> dependenciesOf(Statement statement) {
+        val dependencies = new TreeSet<String>();
+        for (val dependency : statement.dependencies())
+            dependencies.add(dependency.getText());
+        return Collections.unmodifiableSortedSet(dependencies);
     }
 
     public Optional<F> apply(Session<F,C> session, F baseFrame) {
@@ -63,8 +72,15 @@ public class SessionInput<F extends Frame<F>, C extends Context<F,C>> {
     }
 
     public String serializeStatement() {
-        if (this.serialization != null)
-            return this.serialization;
+        return getStatement().getText();
+    }
+
+    /**
+     * The interned statement for this input, built from the already interned statements of its args
+     */
+    public Statement getStatement() {
+        if (this.statement != null)
+            return this.statement;
 
         if (this.result == null)
             this.result = this.apply(session, session.frameProvider.newFrame());
@@ -73,12 +89,11 @@ public class SessionInput<F extends Frame<F>, C extends Context<F,C>> {
                 .map(f -> f instanceof EmptyFrame ? Frame.EMPTY_ANNOTATION : "")
                 .orElse(Frame.FAILED_ANNOTATION);
 
-        return annotation + this.function + " (" +
-            args.stream()
-            .map(arg -> session.getInput(arg))
-            .map(arg -> arg.serializeStatement())
-            .collect(Collectors.joining(", "))
-            + ")";
+        val argStatements = new Statement[args.size()];
+        for (int i = 0; i < argStatements.length; i++)
+            argStatements[i] = session.getInput(args.get(i)).getStatement();
+
+        return context.getStatements().intern(annotation, this.function, argStatements);
     }
 
     public List<F> getArgFrames() {
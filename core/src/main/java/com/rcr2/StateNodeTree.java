@@ -1,57 +1,161 @@
 package com.rcr2;
 
-import lombok.RequiredArgsConstructor;
 import org.antlr.v4.runtime.misc.NotNull;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * A trie of states, one node per sorted prefix of the dependencies of a state.
+ *
+ * Edges are labelled with ints the tree interns dependencies to, and each node keeps its children in a pair of arrays
+ * sorted by label, so a small node costs a few words rather than a map. The abstraction entries are keyed by the
+ * labels of a suffix and then by the node its prefix leads to, instead of by the text of either list.
+ *
+ * Every find stamps the nodes it passes. Once there are more than {@code maxNodes} nodes the least recently
+ * stamped are dropped; a node is stamped whenever its children are, so only whole cold subtrees are dropped.
+ * A label is counted once for every node it is the edge of, and given up for reuse when the last of them is dropped.
+ *
+ * The states are keyed by their dependencies, not as the persistence keys them, so the {@link DecisionEngine}
+ * does not look its candidates up here.
+ * Not thread safe
+ */
 public class StateNodeTree {
 
-    final Map<String,Map<String,StateNode>> abstractionEntries = new HashMap<>();
-    final StateNode root = new StateNode(null,null);
+    public static final int DEFAULT_MAX_NODES = 100_000;
 
-    StateNode newStateNode(@NotNull StateNode parent, @NotNull List<String> dependencies, int index) {
-        StateNode stateNode = new StateNode(dependencies.get(index), parent);
-        String before = dependencies.subList(0, index).toString();
-        String after = dependencies.subList(index, dependencies.size()).toString();
+    private static final int[] NO_LABELS = new int[0];
+    private static final StateNode[] NO_CHILDREN = new StateNode[0];
+
+    final Map<Path,Map<StateNode,StateNode>> abstractionEntries = new HashMap<>();
+    final StateNode root = new StateNode(-1, null, null);
+
+    private final Map<String,Integer> labels = new HashMap<>();
+    private final List<String> args = new ArrayList<>();
+    // the number of nodes each label is the edge of, and the labels no node is
+    private int[] uses = new int[16];
+    private final Deque<Integer> freeLabels = new ArrayDeque<>();
+
+    private int maxNodes = DEFAULT_MAX_NODES;
+    private int nodes = 0;
+    private long clock = 0;
+
+    /**
+     * Bound the number of nodes the tree keeps, dropping the least recently found ones once there are more
+     */
+    public void setMaxNodes(int maxNodes) {
+        if (maxNodes < 1)
+            throw new IllegalArgumentException("maxNodes must be positive");
+        this.maxNodes = maxNodes;
+        if (nodes > maxNodes)
+            prune();
+    }
+
+    /**
+     * The number of nodes below the root
+     */
+    public int size() {
+        return nodes;
+    }
+
+    private int label(String arg) {
+        Integer label = labels.get(arg);
+        if (label == null) {
+            if (!freeLabels.isEmpty()) {
+                label = freeLabels.pop();
+                args.set(label, arg);
+            } else {
+                label = args.size();
+                args.add(arg);
+                if (label == uses.length)
+                    uses = Arrays.copyOf(uses, label * 2);
+            }
+            labels.put(arg, label);
+        }
+        return label;
+    }
+
+    /**
+     * The number of distinct dependencies the nodes are labelled with
+     */
+    int labelCount() {
+        return labels.size();
+    }
+
+    private int[] labels(Collection<String> dependencies) {
+        int[] labels = new int[dependencies.size()];
+        int i = 0;
+        for (String dependency : dependencies)
+            labels[i++] = label(dependency);
+        return labels;
+    }
+
+    private StateNode newStateNode(@NotNull StateNode parent, int[] labels, int index) {
+        StateNode stateNode = new StateNode(labels[index], args.get(labels[index]), parent);
+        parent.addChild(stateNode);
+        uses[labels[index]]++;
+        nodes++;
         abstractionEntries
-                .computeIfAbsent(after, a -> new HashMap<>())
-                .computeIfAbsent(before, b -> stateNode);
+                .computeIfAbsent(new Path(Arrays.copyOfRange(labels, index, labels.length)), a -> new HashMap<>())
+                .putIfAbsent(parent, stateNode);
 
         return stateNode;
     }
 
     public StateNode find(Set<String> dependencies) {
-        return find(root, new ArrayList<>(dependencies), 0);
+        int[] labels = labels(dependencies);
+        long stamp = ++clock;
+
+        StateNode stateNode = root;
+        stateNode.lastFound = stamp;
+        for (int i = 0; i < labels.length; i++) {
+            StateNode child = stateNode.child(labels[i]);
+            stateNode = child != null ? child : newStateNode(stateNode, labels, i);
+            stateNode.lastFound = stamp;
+        }
+
+        if (nodes > maxNodes)
+            prune();
+        return stateNode;
     }
 
-    private StateNode find(StateNode stateNode, List<String> dependencies, int i) {
-        if (dependencies.size() == i)
-            return stateNode;
+    // the node the dependencies lead to, without adding any, or null if the tree has none
+    private StateNode existing(List<String> dependencies) {
+        StateNode stateNode = root;
+        for (int i = 0; i < dependencies.size() && stateNode != null; i++) {
+            Integer label = labels.get(dependencies.get(i));
+            stateNode = label != null ? stateNode.child(label) : null;
+        }
+        return stateNode;
+    }
 
-        String next = new ArrayList<>(dependencies).get(i);
-        return find(stateNode.children.computeIfAbsent(next, serializedArg -> newStateNode(stateNode, dependencies, i)),
-                    dependencies,
-                 i + 1);
+    /**
+     * The node reached by {@code before} followed by the first of {@code after}, if it was added by a find
+     * whose dependencies ended with {@code after}
+     */
+    StateNode abstraction(List<String> before, List<String> after) {
+        int[] suffix = new int[after.size()];
+        for (int i = 0; i < suffix.length; i++) {
+            Integer label = labels.get(after.get(i));
+            if (label == null)
+                return null;
+            suffix[i] = label;
+        }
+        Map<StateNode,StateNode> byPrefix = abstractionEntries.get(new Path(suffix));
+        StateNode parent = existing(before);
+        return byPrefix != null && parent != null ? byPrefix.get(parent) : null;
     }
 
     public Set<StateNode> abstractlyRelated(Set<String> scopedDependenciesSet, List<String> nonScopedDependencies) {
         List<String> scopedDependencies = new ArrayList<>(scopedDependenciesSet);
         Set<StateNode> related = new HashSet<>();
         if (scopedDependencies.size() >= 2) {
-            String after = scopedDependencies.subList(scopedDependencies.size() - 1, scopedDependencies.size()).toString();
-            List<String> beforeDependencies = scopedDependencies.subList(0, scopedDependencies.size() - 1);
+            List<String> after = scopedDependencies.subList(scopedDependencies.size() - 1, scopedDependencies.size());
+            List<String> modified = new ArrayList<>(scopedDependencies.subList(0, scopedDependencies.size() - 1));
             for (String nonScoped : nonScopedDependencies) {
-                List<String> modified = beforeDependencies.stream().collect(Collectors.toList());
                 modified.set(0, nonScoped);
-
-                Map<String,StateNode> m = abstractionEntries.get(after);
-                if (m != null) {
-                    StateNode relatedNode = m.get(modified.toString());
-                    if (relatedNode != null)
-                        related.add(relatedNode);
-                }
+                StateNode relatedNode = abstraction(modified, after);
+                if (relatedNode != null)
+                    related.add(relatedNode);
             }
         }
         StateNode stateNode = find(scopedDependenciesSet);
@@ -61,20 +165,152 @@ public class StateNodeTree {
         return related;
     }
 
-    @RequiredArgsConstructor
+    /**
+     * Drop the least recently found nodes until a quarter of the budget is free again,
+     * so that pruning is paid for by the finds that filled the tree back up
+     */
+    private void prune() {
+        int keep = maxNodes - maxNodes / 4;
+        long[] stamps = new long[nodes];
+        int gathered = gatherStamps(root, stamps, 0);
+        Arrays.sort(stamps, 0, gathered);
+        // nodes found at the same time go together, so this drops at most as many as needed
+        long threshold = stamps[gathered - keep];
+
+        dropOlderThan(root, threshold);
+        for (Iterator<Map.Entry<Path,Map<StateNode,StateNode>>> byPath = abstractionEntries.entrySet().iterator(); byPath.hasNext(); ) {
+            Map.Entry<Path,Map<StateNode,StateNode>> entry = byPath.next();
+            Map<StateNode,StateNode> entries = entry.getValue();
+            entries.values().removeIf(stateNode -> stateNode.dropped);
+            // a path with a label given up could otherwise match once the label is reused
+            if (entries.isEmpty() || !isLive(entry.getKey()))
+                byPath.remove();
+        }
+    }
+
+    private boolean isLive(Path path) {
+        for (int label : path.labels)
+            if (uses[label] == 0)
+                return false;
+        return true;
+    }
+
+    private static int gatherStamps(StateNode stateNode, long[] stamps, int gathered) {
+        for (int i = 0; i < stateNode.childCount; i++) {
+            stamps[gathered++] = stateNode.children[i].lastFound;
+            gathered = gatherStamps(stateNode.children[i], stamps, gathered);
+        }
+        return gathered;
+    }
+
+    private void dropOlderThan(StateNode stateNode, long threshold) {
+        int kept = 0;
+        for (int i = 0; i < stateNode.childCount; i++) {
+            StateNode child = stateNode.children[i];
+            if (child.lastFound < threshold) {
+                drop(child);
+            } else {
+                dropOlderThan(child, threshold);
+                stateNode.labels[kept] = stateNode.labels[i];
+                stateNode.children[kept++] = child;
+            }
+        }
+        Arrays.fill(stateNode.children, kept, stateNode.childCount, null);
+        stateNode.childCount = kept;
+    }
+
+    private void drop(StateNode stateNode) {
+        stateNode.dropped = true;
+        nodes--;
+        if (--uses[stateNode.label] == 0) {
+            labels.remove(stateNode.arg);
+            args.set(stateNode.label, null);
+            freeLabels.push(stateNode.label);
+        }
+        for (int i = 0; i < stateNode.childCount; i++)
+            drop(stateNode.children[i]);
+    }
+
+    /**
+     * The labels of a run of dependencies, compared by value
+     */
+    static final class Path {
+        final int[] labels;
+        private final int hash;
+
+        Path(int[] labels) {
+            this.labels = labels;
+            this.hash = Arrays.hashCode(labels);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Path && Arrays.equals(labels, ((Path) o).labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     public static class StateNode {
+        final int label;
         @NotNull final String arg;
         @NotNull final StateNode parent;
-        @NotNull final Map<String, StateNode> children = new HashMap<>();
 
+        // the labels of the children and the children themselves, sorted by label
+        private int[] labels = NO_LABELS;
+        private StateNode[] children = NO_CHILDREN;
+        private int childCount = 0;
+
+        private long lastFound;
+        private boolean dropped = false;
+        private String serialized;
+
+        StateNode(int label, String arg, StateNode parent) {
+            this.label = label;
+            this.arg = arg;
+            this.parent = parent;
+        }
+
+        StateNode child(int label) {
+            int at = Arrays.binarySearch(labels, 0, childCount, label);
+            return at >= 0 ? children[at] : null;
+        }
+
+        private void addChild(StateNode child) {
+            int at = -Arrays.binarySearch(labels, 0, childCount, child.label) - 1;
+            if (childCount == labels.length) {
+                int capacity = Math.max(2, childCount + (childCount >> 1));
+                labels = Arrays.copyOf(labels, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(labels, at, labels, at + 1, childCount - at);
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            labels[at] = child.label;
+            children[at] = child;
+            childCount++;
+        }
+
+        /**
+         * The args from this node up to the root, joined with colons. Built once, from the nearest ancestor
+         * that has already been serialized, and kept
+         */
         String serialize() {
-            String s = arg;
+            if (serialized != null || parent == null)
+                return serialized;
+
+            StringBuilder builder = new StringBuilder(arg);
             StateNode current = parent;
-            while (current != null) {
-                s += ":" + current.arg;
+            while (current.parent != null && current.serialized == null) {
+                builder.append(':').append(current.arg);
                 current = current.parent;
             }
-            return s;
+            // the root's arg is null, and has always been serialized as such
+            builder.append(':').append(current.parent == null ? current.arg : current.serialized);
+            serialized = builder.toString();
+            return serialized;
         }
 
     }
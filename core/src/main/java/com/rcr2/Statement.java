@@ -0,0 +1,107 @@
+package com.rcr2;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A serialized statement such as {@code fn2 (fn1 (text))}, interned by a {@link StatementInterner}.
+ *
+ * Statements are hash-consed: each refers to the interned statements of its args, so two statements
+ * are equal exactly when their annotation, function and arg statements are, which is checked without
+ * looking at the args' own args. The serialized text is built once, from the already built text of the args
+ */
+public final class Statement {
+
+    @Getter final int id;
+    @Getter final String annotation;
+    @Getter final String function;
+    final Statement[] args;
+    private final int hash;
+    @Getter String text;
+    // the statements of the args, their args and so on, built the first time they are asked for
+    private Statement[] dependencies;
+
+    Statement(int id, String annotation, String function, Statement[] args, String text) {
+        this.id = id;
+        this.annotation = annotation;
+        this.function = function;
+        this.args = args;
+        this.text = text;
+        int hash = 31 * annotation.hashCode() + function.hashCode();
+        for (Statement arg : args)
+            hash = 31 * hash + arg.hash;
+        this.hash = hash;
+    }
+
+    public int arity() {
+        return args.length;
+    }
+
+    public Statement getArg(int index) {
+        return args[index];
+    }
+
+    /**
+     * The distinct statements this one is built from, transitively, sorted by their text.
+     * They are merged from the args' own dependencies, which are built once per statement,
+     * so a chain of statements costs time linear in its length however often its args are shared.
+     * The returned array must not be modified
+     */
+    Statement[] dependencies() {
+        if (dependencies != null)
+            return dependencies;
+
+        int size = 0;
+        for (Statement arg : args)
+            size += 1 + arg.dependencies().length;
+        Statement[] gathered = new Statement[size];
+        int at = 0;
+        for (Statement arg : args) {
+            gathered[at++] = arg;
+            Statement[] of = arg.dependencies();
+            System.arraycopy(of, 0, gathered, at, of.length);
+            at += of.length;
+        }
+        Arrays.sort(gathered, BY_TEXT);
+
+        // interned statements with the same text are the same statement
+        int distinct = 0;
+        for (int i = 0; i < gathered.length; i++)
+            if (distinct == 0 || !gathered[distinct - 1].text.equals(gathered[i].text))
+                gathered[distinct++] = gathered[i];
+
+        this.dependencies = distinct == gathered.length ? gathered : Arrays.copyOf(gathered, distinct);
+        return this.dependencies;
+    }
+
+    private static final Comparator<Statement> BY_TEXT = Comparator.comparing(Statement::getText);
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Statement))
+            return false;
+        Statement other = (Statement) o;
+        if (hash != other.hash || args.length != other.args.length
+                || !function.equals(other.function) || !annotation.equals(other.annotation))
+            return false;
+        // args are interned so identity is enough
+        for (int i = 0; i < args.length; i++)
+            if (args[i] != other.args[i])
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,70 @@
+package com.rcr2;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static com.rcr2.Session.DEFAULT_STATE_SERIALIZATION;
+
+/**
+ * Gives every distinct statement a single {@link Statement} instance with a stable id.
+ *
+ * Statements are only weakly held, so those no longer referenced by working memory can be collected.
+ * A statement keeps its args alive, so a statement is never interned twice while anything refers to it.
+ * Ids are never reused. Not thread safe
+ */
+public class StatementInterner {
+
+    private static final Statement[] NO_ARGS = new Statement[0];
+
+    private final Map<Statement,WeakReference<Statement>> byStructure = new WeakHashMap<>();
+    private final Map<String,WeakReference<Statement>> byText = new WeakHashMap<>();
+    private int nextId = 0;
+
+    private final Statement text = new Statement(nextId++, "", DEFAULT_STATE_SERIALIZATION, NO_ARGS, DEFAULT_STATE_SERIALIZATION);
+
+    public StatementInterner() {
+        byText.put(text.text, new WeakReference<>(text));
+    }
+
+    /**
+     * The statement for the text of the session itself, which is serialized without an arg list
+     */
+    public Statement text() {
+        return text;
+    }
+
+    public Statement intern(String annotation, String function, Statement[] args) {
+        Statement candidate = new Statement(nextId, annotation, function, args, null);
+        WeakReference<Statement> reference = byStructure.get(candidate);
+        Statement existing = reference == null ? null : reference.get();
+        if (existing != null)
+            return existing;
+
+        candidate.text = serialize(candidate);
+        nextId++;
+        byStructure.put(candidate, new WeakReference<>(candidate));
+        byText.put(candidate.text, new WeakReference<>(candidate));
+        return candidate;
+    }
+
+    /**
+     * @return the interned statement serialized as {@code text}, or null if there is none
+     */
+    public Statement lookup(String text) {
+        WeakReference<Statement> reference = byText.get(text);
+        return reference == null ? null : reference.get();
+    }
+
+    private static String serialize(Statement statement) {
+        StringBuilder builder = new StringBuilder(statement.annotation)
+                .append(statement.function)
+                .append(" (");
+        for (int i = 0; i < statement.args.length; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(statement.args[i].text);
+        }
+        return builder.append(")").toString();
+    }
+}
@@ -0,0 +1,145 @@
+package com.rcr2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass parser for the statements that make up nearly all input:
+ * an optional alias, a function and either space separated words or a parenthesized list of words as args,
+ * such as {@code a = f x y;}, {@code g;} or {@code a = h (text);}.
+ *
+ * It yields the same {@link SessionInput} that walking the ANTLR parse tree with a {@link StatementListener} would.
+ * Anything else, including nested expressions and input that is not a valid statement,
+ * is left to ANTLR so that its error handling is unchanged.
+ * Only the alias, function and arg strings are allocated, and the arg list
+ */
+final class StatementParser {
+
+    private StatementParser() {}
+
+    /**
+     * @return the parsed statement, or null if it has to be parsed by ANTLR
+     */
+    static <F extends Frame<F>, C extends Context<F,C>> SessionInput<F,C> parse(Session<F,C> session, CharSequence input) {
+        final int length = input.length();
+
+        int start = 0;
+        int i = wordEnd(input, start);
+        if (i == start)
+            return null;
+        final int firstEnd = i;
+
+        String alias = null;
+        i = skipWhitespace(input, i);
+        if (isEquals(input, i)) {
+            alias = word(input, start, firstEnd);
+            if (alias == null)
+                return null;
+            start = skipWhitespace(input, i + 1);
+            i = wordEnd(input, start);
+            if (i == start)
+                return null;
+        }
+        else {
+            i = firstEnd;
+        }
+        final String function = word(input, start, i);
+        if (function == null)
+            return null;
+
+        final List<String> args = new ArrayList<>();
+        final int whitespaceEnd = skipWhitespace(input, i);
+        if (whitespaceEnd > i && whitespaceEnd < length && input.charAt(whitespaceEnd) == '(') {
+            // top level arg group, which does not allow whitespace before a comma or either parenthesis
+            i = whitespaceEnd + 1;
+            if (i < length && input.charAt(i) == ')') {
+                i++;
+            }
+            else {
+                while (true) {
+                    start = i;
+                    i = wordEnd(input, start);
+                    final String arg = word(input, start, i);
+                    if (arg == null || i == length)
+                        return null;
+                    args.add(arg);
+                    final char c = input.charAt(i);
+                    if (c == ')') {
+                        i++;
+                        break;
+                    }
+                    if (c != ',')
+                        return null;
+                    i = skipWhitespace(input, i + 1);
+                }
+            }
+        }
+        else if (whitespaceEnd > i && whitespaceEnd < length && isWordChar(input.charAt(whitespaceEnd))) {
+            // user arg group
+            i = whitespaceEnd;
+            while (true) {
+                start = i;
+                i = wordEnd(input, start);
+                final String arg = word(input, start, i);
+                if (arg == null)
+                    return null;
+                args.add(arg);
+                final int next = skipWhitespace(input, i);
+                if (next == i || next == length || !isWordChar(input.charAt(next)))
+                    break;
+                i = next;
+            }
+        }
+
+        i = skipWhitespace(input, i);
+        if (i != length - 1 || input.charAt(i) != ';')
+            return null;
+
+        final SessionInput<F,C> sessionInput = new SessionInput<>(session);
+        sessionInput.setAlias(alias);
+        sessionInput.setFunction(function);
+        sessionInput.setArgs(args);
+        return sessionInput;
+    }
+
+    /**
+     * The characters of USER_WORD in the grammar
+     */
+    private static boolean isWordChar(char c) {
+        return c != ' ' && c != '\n' && c != '\t' && c != ';' && c != ',' && c != '(' && c != ')';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t';
+    }
+
+    private static int wordEnd(CharSequence input, int i) {
+        while (i < input.length() && isWordChar(input.charAt(i)))
+            i++;
+        return i;
+    }
+
+    private static int skipWhitespace(CharSequence input, int i) {
+        while (i < input.length() && isWhitespace(input.charAt(i)))
+            i++;
+        return i;
+    }
+
+    /**
+     * A lone = is lexed as the assignment token rather than a word
+     */
+    private static boolean isEquals(CharSequence input, int i) {
+        return i < input.length()
+                && input.charAt(i) == '='
+                && (i + 1 == input.length() || !isWordChar(input.charAt(i + 1)));
+    }
+
+    /**
+     * @return the word between start and end, or null if there is none or it is the assignment token
+     */
+    private static String word(CharSequence input, int start, int end) {
+        if (end == start || isEquals(input, start) && end == start + 1)
+            return null;
+        return input.subSequence(start, end).toString();
+    }
+}
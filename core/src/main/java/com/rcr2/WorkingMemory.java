@@ -0,0 +1,231 @@
+package com.rcr2;
+
+import com.rcr2.Session.Entry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The entries of a session's working memory, in the order they were added.
+ *
+ * A ring buffer holds the last {@code capacity} entries added, and two indexes find the newest of them
+ * bound to an alias or made by a statement. An entry is live while its alias still resolves to it: once its alias
+ * is bound again, or it is removed, it only stays findable by its statement until the ring overwrites it.
+ * Finding the newest or oldest live entry or the few newest ones walks the ring from one end, so it never sorts or allocates.
+ * Not thread safe
+ */
+public final class WorkingMemory<F extends Frame<F>, C extends Context<F,C>> implements Iterable<Entry<F,C>> {
+
+    private final Entry<F,C>[] ring;
+    // the number of entries ever added; the newest is at (added - 1) % capacity
+    private long added = 0;
+
+    private final Map<String,Entry<F,C>> byAlias = new HashMap<>();
+    private final Map<Statement,Entry<F,C>> byStatement = new HashMap<>();
+
+    // the keys of the states the live entries leave, one per step, built when first asked for after a change
+    private boolean keysStale = true;
+    private int keysAfterStep;
+    private int keyCount = 0;
+    private final int[] keySteps;
+    private final String[] keys;
+    // the serializations gathered while building them, kept sorted
+    private final String[] window;
+
+    @SuppressWarnings("unchecked")
+    WorkingMemory(int capacity) {
+        this.ring = new Entry[capacity];
+        this.keySteps = new int[capacity];
+        this.keys = new String[capacity];
+        this.window = new String[capacity];
+    }
+
+    void add(Entry<F,C> entry) {
+        int slot = (int) (added % ring.length);
+        Entry<F,C> evicted = ring[slot];
+        if (evicted != null) {
+            byAlias.remove(evicted.sessionInput.alias, evicted);
+            byStatement.remove(evicted.sessionInput.getStatement(), evicted);
+        }
+        ring[slot] = entry;
+        added++;
+        keysStale = true;
+        byAlias.put(entry.sessionInput.alias, entry);
+        byStatement.put(entry.sessionInput.getStatement(), entry);
+    }
+
+    Entry<F,C> byAlias(String alias) {
+        return byAlias.get(alias);
+    }
+
+    Entry<F,C> byStatement(Statement statement) {
+        return byStatement.get(statement);
+    }
+
+    /**
+     * Unbind the aliases of the entries added while running a sequence
+     */
+    void removeInSequence() {
+        for (Entry<F,C> entry : ring)
+            if (entry != null && entry.isInSequence())
+                byAlias.remove(entry.sessionInput.alias, entry);
+        keysStale = true;
+    }
+
+    /**
+     * The key of the state left by the live entries made after {@code afterStep} and up to {@code step}:
+     * their statements, sorted and joined with commas
+     * @return the key, or null if there are no such entries
+     */
+    String stateKey(int step, int afterStep) {
+        if (keysStale || keysAfterStep != afterStep)
+            buildKeys(afterStep);
+
+        // the key of the last step up to step, there being at most one per slot
+        String key = null;
+        for (int i = 0; i < keyCount && keySteps[i] <= step; i++)
+            key = keys[i];
+        return key;
+    }
+
+    private void buildKeys(int afterStep) {
+        keyCount = 0;
+        int gathered = 0;
+        // entries are added in step order, so the entries of a step follow each other
+        for (int age = ring.length - 1; age >= 0; age--) {
+            Entry<F,C> entry = back(age);
+            if (!isLive(entry) || entry.getStep() <= afterStep)
+                continue;
+
+            String serialization = entry.sessionInput.serializeStatement();
+            int at = Arrays.binarySearch(window, 0, gathered, serialization);
+            if (at < 0)
+                at = -at - 1;
+            System.arraycopy(window, at, window, at + 1, gathered - at);
+            window[at] = serialization;
+            gathered++;
+
+            Entry<F,C> next = age > 0 ? back(age - 1) : null;
+            if (next == null || next.getStep() != entry.getStep()) {
+                keySteps[keyCount] = entry.getStep();
+                keys[keyCount] = join(gathered);
+                keyCount++;
+            }
+        }
+        keysAfterStep = afterStep;
+        keysStale = false;
+    }
+
+    /**
+     * The key of the state left by entries with these statements, as {@link #stateKey(int, int)} builds it
+     */
+    static String stateKey(Collection<String> serializations) {
+        List<String> sorted = new ArrayList<>(serializations);
+        Collections.sort(sorted);
+        return String.join(",", sorted);
+    }
+
+    private String join(int gathered) {
+        StringBuilder builder = new StringBuilder(window[0]);
+        for (int i = 1; i < gathered; i++)
+            builder.append(',').append(window[i]);
+        return builder.toString();
+    }
+
+    private boolean isLive(Entry<F,C> entry) {
+        return entry != null && byAlias.get(entry.sessionInput.alias) == entry;
+    }
+
+    // the entry added age entries before the newest, or null once the ring no longer holds it
+    private Entry<F,C> back(int age) {
+        if (age >= ring.length || age >= added)
+            return null;
+        return ring[(int) ((added - 1 - age) % ring.length)];
+    }
+
+    /**
+     * The number of live entries
+     */
+    public int size() {
+        return byAlias.size();
+    }
+
+    public boolean isEmpty() {
+        return byAlias.isEmpty();
+    }
+
+    /**
+     * @return the newest live entry, or null if there is none
+     */
+    public Entry<F,C> mostRecent() {
+        for (int age = 0; age < ring.length; age++) {
+            Entry<F,C> entry = back(age);
+            if (isLive(entry))
+                return entry;
+        }
+        return null;
+    }
+
+    /**
+     * @return the oldest live entry, or null if there is none
+     */
+    public Entry<F,C> leastRecent() {
+        for (int age = ring.length - 1; age >= 0; age--) {
+            Entry<F,C> entry = back(age);
+            if (isLive(entry))
+                return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Fill {@code into} with the newest live entries, newest first
+     * @return how many were filled in, at most {@code into.length}
+     */
+    public int mostRecent(Entry<F,C>[] into) {
+        int filled = 0;
+        for (int age = 0; age < ring.length && filled < into.length; age++) {
+            Entry<F,C> entry = back(age);
+            if (isLive(entry))
+                into[filled++] = entry;
+        }
+        return filled;
+    }
+
+    /**
+     * The live entries, oldest first
+     */
+    @Override
+    public Iterator<Entry<F,C>> iterator() {
+        return new Iterator<Entry<F,C>>() {
+            int age = advance(ring.length - 1);
+
+            private int advance(int from) {
+                while (from >= 0 && !isLive(back(from)))
+                    from--;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return age >= 0;
+            }
+
+            @Override
+            public Entry<F,C> next() {
+                if (age < 0)
+                    throw new NoSuchElementException();
+                Entry<F,C> entry = back(age);
+                age = advance(age - 1);
+                return entry;
+            }
+        };
+    }
+}
@@ -3,8 +3,7 @@ package com.rcr2.impl;
 import com.rcr2.*;
 import lombok.val;
 
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.*;
 
 public abstract class AbstractPersistence<F extends Frame<F>, C extends Context<F,C>> implements Persistence<F,C> {
 
@@ -12,21 +11,90 @@ public abstract class AbstractPersistence<F extends Frame<F>, C extends Context<
 
     @Override
     public String bestFor(String currentState, int minObservations) {
-        return getFeedbackStats(currentState)
+        return bestOf(getFeedbackStats(currentState), minObservations);
+    }
+
+    /**
+     * The stats of several states, keyed by state.
+     * Backends that can look up several states in one round trip should override this
+     */
+    public Map<String,Collection<? extends FeedbackStats>> getFeedbackStats(Collection<String> states) {
+        val feedbackStats = new HashMap<String,Collection<? extends FeedbackStats>>();
+        for (val state : states)
+            feedbackStats.put(state, getFeedbackStats(state));
+        return feedbackStats;
+    }
+
+    /**
+     * Merges the stats of all the states, looked up together, and selects among them
+     */
+    @Override
+    public String bestFor(List<String> states, double[] weights, int minObservations) {
+        return bestOf(states, weights, getFeedbackStats(states), minObservations);
+    }
+
+    /**
+     * Select the script with the best expected value once the stats of every state are merged,
+     * each count and value counting as many times as the weight of its state.
+     * Only stats with a weighted count of at least {@code minObservations} are considered
+     */
+    protected static String bestOf(List<String> states, double[] weights,
+                                   Map<String,? extends Collection<? extends FeedbackStats>> feedbackStats,
+                                   int minObservations) {
+        // weighted count and weighted cumulative value per subsequent statement, in the order they were met
+        val merged = new LinkedHashMap<String,double[]>();
+        for (int i = 0; i < states.size(); i++) {
+            val stats = feedbackStats.get(states.get(i));
+            if (stats == null)
+                continue;
+            for (val live : stats) {
+                // count and expected value from the same moment, however the stats are being added to
+                val entry = live.snapshot();
+                val sums = merged.computeIfAbsent(entry.getSubsequentStatement(), s -> new double[2]);
+                sums[0] += weights[i] * entry.getCount();
+                sums[1] += weights[i] * entry.getCount() * entry.getExpectedValue();
+            }
+        }
+
+        String best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (val entry : merged.entrySet()) {
+            val sums = entry.getValue();
+            if (sums[0] >= minObservations && sums[1] / sums[0] > bestValue) {
+                best = entry.getKey();
+                bestValue = sums[1] / sums[0];
+            }
+        }
+        return best != null ? scriptFor(best) : null;
+    }
+
+    /**
+     * Select the script with the best expected value among stats observed at least {@code minObservations} times.
+     * A single pass, so it never compares the same stats twice while other threads change them
+     */
+    protected static String bestOf(Collection<? extends FeedbackStats> feedbackStats, int minObservations) {
+        return feedbackStats
                 .stream()
                 .filter(entry -> entry.getCount() >= minObservations)
-                .sorted(Comparator.naturalOrder())
-                .findFirst()
-                .map(FeedbackStats::getSubsequentStatement)
-                .map(script -> {
-                    return script.startsWith(Frame.EMPTY_ANNOTATION) ||
-                            script.startsWith(Frame.FAILED_ANNOTATION)
-                            ? script.substring(1)
-                            : script;
-                })
+                .min(Comparator.naturalOrder())
+                .map(AbstractPersistence::scriptFor)
                 .orElse(null);
     }
 
+    /**
+     * The script to run for a subsequent statement, without its result annotation
+     */
+    protected static String scriptFor(FeedbackStats feedbackStats) {
+        return scriptFor(feedbackStats.getSubsequentStatement());
+    }
+
+    protected static String scriptFor(String script) {
+        return script.startsWith(Frame.EMPTY_ANNOTATION) ||
+                script.startsWith(Frame.FAILED_ANNOTATION)
+                ? script.substring(1)
+                : script;
+    }
+
     @Override
     public void update(Session<F,C> sessoin, int score) {
         update(sessoin, null, score);
@@ -34,32 +102,94 @@ public abstract class AbstractPersistence<F extends Frame<F>, C extends Context<
 
     @Override
     public void update(Session<F,C> session, SessionInput<F,C> sideEffectInput, int score) {
+        val batch = new ObservationBatch();
         String previousDependencies = Session.DEFAULT_STATE_SERIALIZATION;
-        for (val alias : session.getEntriesByAlias().keySet()) {
-            // only update the most recent entries
-            if (!session.inScope(alias)) continue;
+        Session.Entry<F,C> textEntry = null;
+        // oldest first, so that every entry is paired with the state the entries before it left
+        for (val entry : session.getWorkingMemory()) {
+            // the text is still learned, but after the chain of the other entries, as it always was
+            if (Session.DEFAULT_STATE_SERIALIZATION.equals(entry.getSessionInput().getAlias().get()))
+                textEntry = entry;
+            else
+                previousDependencies = record(batch, session, entry, previousDependencies, sideEffectInput, score);
+        }
+        if (textEntry != null)
+            record(batch, session, textEntry, previousDependencies, sideEffectInput, score);
 
-            val entry = session.getEntriesByAlias().get(alias);
+        if (!batch.isEmpty())
+            addObservations(batch.drain());
+    }
 
-            // if is substep in a sequence we don't record feedback
-            if (entry.isInSequence()) continue;
+    /**
+     * Add the observations of one entry made from {@code previousDependencies} to the batch
+     * @return the state the entry leaves, for the next entry to be paired with
+     */
+    private String record(ObservationBatch batch, Session<F,C> session, Session.Entry<F,C> entry,
+                          String previousDependencies, SessionInput<F,C> sideEffectInput, int score) {
+        val alias = entry.getSessionInput().getAlias().get();
+        // only update the most recent entries
+        if (!session.inScope(alias)) return previousDependencies;
 
-            // candidate is the script for the next best action
-            val candidate = entry.getSessionInput().serializeStatement();
-            addObservation(previousDependencies, candidate, score);
-            for (val failure: entry.getFailures())
-                addObservation(previousDependencies, failure.getFailedInput().serializeStatement(), failure.getFeedback());
+        // if is substep in a sequence we don't record feedback
+        if (entry.isInSequence()) return previousDependencies;
 
-            previousDependencies = session.serializePrevious(alias);
+        // candidate is the script for the next best action
+        val candidate = entry.getSessionInput().serializeStatement();
+        batch.add(previousDependencies, candidate, score);
+        for (val failure: entry.getFailures())
+            batch.add(previousDependencies, failure.getFailedInput().serializeStatement(), failure.getFeedback());
 
-            // if this is the last step add the sideEffectInput's score, too
-            if (sideEffectInput != null && entry.getStep() == session.getCurrentStep() - 1) {
-                addObservation(previousDependencies,
-                        sideEffectInput.serializeStatement(),
-                        score);
-            }
+        previousDependencies = session.serializePrevious(alias);
+
+        // if this is the last step add the sideEffectInput's score, too
+        if (sideEffectInput != null && entry.getStep() == session.getCurrentStep() - 1) {
+            batch.add(previousDependencies,
+                    sideEffectInput.serializeStatement(),
+                    score);
         }
+        return previousDependencies;
     }
 
     protected abstract void addObservation(String previous, String next, int score);
+
+    /**
+     * Store one merged observation. By default it is replayed through
+     * {@link #addObservation(String, String, int)}, which leaves count and cumulative
+     * the same as if each of its scores had been added on its own.
+     * If a replayed score fails, a {@link PartialWriteException} holds what is left of the observation
+     */
+    protected void addObservation(Observation observation) {
+        for (int i = 0; i < observation.getCount(); i++) {
+            try {
+                addObservation(observation.getPriorStatement(), observation.getSubsequentStatement(),
+                        i == 0 ? observation.getCumulative() : 0);
+            } catch (RuntimeException e) {
+                if (i == 0)
+                    throw e;
+                val rest = new Observation(observation.getPriorStatement(), observation.getSubsequentStatement(),
+                        observation.getCount() - i, 0);
+                throw new PartialWriteException(Collections.singletonList(rest), e);
+            }
+        }
+    }
+
+    /**
+     * Store all observations recorded by one update.
+     * Backends that can write several observations in one round trip should override this.
+     * If storing an observation fails, a {@link PartialWriteException} holds it and every one after it
+     */
+    protected void addObservations(Collection<Observation> observations) {
+        val remaining = new ArrayList<Observation>(observations);
+        for (int i = 0; i < remaining.size(); i++) {
+            try {
+                addObservation(remaining.get(i));
+            } catch (PartialWriteException e) {
+                val unwritten = new ArrayList<Observation>(e.getUnwritten());
+                unwritten.addAll(remaining.subList(i + 1, remaining.size()));
+                throw new PartialWriteException(unwritten, e.getCause());
+            } catch (RuntimeException e) {
+                throw new PartialWriteException(new ArrayList<>(remaining.subList(i, remaining.size())), e);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import com.rcr2.ScriptParseException;
+import com.rcr2.Session;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.val;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Drives {@link Session#imitatorStep()} in a loop without any console I/O, for training a store offline.
+ * Feedback comes from whatever {@link com.rcr2.Feedback} the sessions were created with.
+ *
+ * Every episode starts from a fresh session. Steps whose statement fails to parse are counted and skipped
+ */
+@RequiredArgsConstructor
+public class BatchRunner<F extends Frame<F>, C extends Context<F,C>> {
+
+    @NonNull private final Supplier<? extends Session<F,C>> newEpisode;
+    // advances the environment after every step
+    @NonNull private final Consumer<? super Session<F,C>> afterStep;
+
+    // ends an episode before it has run all of its steps
+    @Setter @NonNull
+    private Predicate<? super Session<F,C>> episodeOver = session -> false;
+
+    public Report run(int episodes, int stepsPerEpisode) {
+        val report = new Report();
+        val start = System.nanoTime();
+        for (int episode = 0; episode < episodes; episode++)
+            report.add(runEpisode(stepsPerEpisode));
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * Run episodes in parallel on {@code pool}, each in its own session.
+     * The episode supplier, the after step callback and the persistence the sessions share must all be thread safe,
+     * such as {@link ConcurrentInMemoryPersistence}
+     */
+    public Report run(int episodes, int stepsPerEpisode, ForkJoinPool pool) {
+        val start = System.nanoTime();
+        final Report report;
+        try {
+            report = pool.submit(() -> IntStream.range(0, episodes)
+                        .parallel()
+                        .mapToObj(episode -> runEpisode(stepsPerEpisode))
+                        .reduce(Report::add)
+                        .orElseGet(Report::new))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running episodes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private Report runEpisode(int steps) {
+        val report = new Report();
+        val session = newEpisode.get();
+        session.setReportSyntaxErrors(false);
+        for (int step = 0; step < steps && !episodeOver.test(session); step++) {
+            try {
+                session.imitatorStep();
+            } catch (ScriptParseException e) {
+                report.failedSteps++;
+            }
+            afterStep.accept(session);
+            report.steps++;
+        }
+        report.episodes++;
+        return report;
+    }
+
+    /**
+     * Run a single episode of {@code steps} steps
+     */
+    public Report runSteps(int steps) {
+        return run(1, steps);
+    }
+
+    @Getter
+    public static class Report {
+        long steps = 0;
+        long failedSteps = 0;
+        long episodes = 0;
+        long elapsedNanos = 0;
+
+        Report add(Report other) {
+            steps += other.steps;
+            failedSteps += other.failedSteps;
+            episodes += other.episodes;
+            return this;
+        }
+
+        public double getStepsPerSecond() {
+            return elapsedNanos == 0 ? 0 : steps * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d steps in %d episodes, %d failed to parse, %.1f s, %.0f steps/s",
+                    steps, episodes, failedSteps, elapsedNanos / 1e9, getStepsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.util.*;
+
+/**
+ * Read-through cache of {@link #getFeedbackStats(String)} in front of another persistence.
+ *
+ * Stats are cached per prior state and the least recently used states are evicted once
+ * more than {@code maxSize} are cached. Entries optionally expire {@code ttlMillis} after
+ * they were loaded, which bounds how stale they can get when other sessions write to
+ * the same store. Observations written through this persistence invalidate their prior state.
+ *
+ * Caching a state copies its stats, which loads every page a lazy delegate would otherwise fetch on demand.
+ * So a state is copied only up to {@code maxStatsPerState} stats; one with more is passed through uncached,
+ * its remaining pages still loaded lazily, after at most one page more than that limit has been fetched.
+ */
+public class CachingPersistence<F extends Frame<F>, C extends Context<F,C>> extends ForwardingPersistence<F,C> {
+
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+    public static final long NO_EXPIRY = 0;
+    public static final int DEFAULT_MAX_STATS_PER_STATE = 1_000;
+
+    @RequiredArgsConstructor
+    private static class CacheEntry {
+        final List<FeedbackStats> feedbackStats;
+        final long loadedAt;
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final int maxStatsPerState;
+
+    // guarded by this
+    private final LinkedHashMap<String,CacheEntry> cache;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    // bumped on every invalidation so that loads racing with a write are not cached
+    private long generation = 0;
+
+    public CachingPersistence(AbstractPersistence<F,C> delegate) {
+        this(delegate, DEFAULT_MAX_SIZE, NO_EXPIRY);
+    }
+
+    public CachingPersistence(AbstractPersistence<F,C> delegate, int maxSize, long ttlMillis) {
+        this(delegate, maxSize, ttlMillis, DEFAULT_MAX_STATS_PER_STATE);
+    }
+
+    public CachingPersistence(AbstractPersistence<F,C> delegate, int maxSize, long ttlMillis, int maxStatsPerState) {
+        super(delegate);
+        if (maxSize < 1 || maxStatsPerState < 1)
+            throw new IllegalArgumentException("Cache size and stats per state must be positive");
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.maxStatsPerState = maxStatsPerState;
+        // access ordered so that iteration starts from the least recently used state
+        this.cache = new LinkedHashMap<String,CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,CacheEntry> eldest) {
+                if (size() > CachingPersistence.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Collection<? extends FeedbackStats> getFeedbackStats(String currentState) {
+        long loadGeneration;
+        synchronized (this) {
+            val entry = cache.get(currentState);
+            if (entry != null && !isExpired(entry)) {
+                hits++;
+                return entry.feedbackStats;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        // load outside the lock so that a slow delegate does not block other states
+        val stats = delegate.getFeedbackStats(currentState);
+        val loaded = copy(stats);
+        if (loaded == null)
+            return stats;
+        synchronized (this) {
+            if (loadGeneration == generation)
+                cache.put(currentState, new CacheEntry(loaded, System.nanoTime()));
+        }
+        return loaded;
+    }
+
+    /**
+     * @return an unmodifiable copy of {@code stats}, or null if they are more than {@code maxStatsPerState}
+     */
+    private List<FeedbackStats> copy(Collection<? extends FeedbackStats> stats) {
+        val copy = new ArrayList<FeedbackStats>();
+        if (stats == null)
+            return Collections.unmodifiableList(copy);
+        val iterator = stats.iterator();
+        while (iterator.hasNext()) {
+            if (copy.size() == maxStatsPerState)
+                return null;
+            copy.add(iterator.next());
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Serves the cached states and loads all the others from the delegate in one call
+     */
+    @Override
+    public Map<String,Collection<? extends FeedbackStats>> getFeedbackStats(Collection<String> states) {
+        val feedbackStats = new HashMap<String,Collection<? extends FeedbackStats>>();
+        val missing = new ArrayList<String>();
+        long loadGeneration;
+        synchronized (this) {
+            for (val state : states) {
+                val entry = cache.get(state);
+                if (entry != null && !isExpired(entry)) {
+                    hits++;
+                    feedbackStats.put(state, entry.feedbackStats);
+                } else if (!feedbackStats.containsKey(state)) {
+                    misses++;
+                    feedbackStats.put(state, Collections.emptyList());
+                    missing.add(state);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if (missing.isEmpty())
+            return feedbackStats;
+
+        val loaded = delegate.getFeedbackStats(missing);
+        val copies = new HashMap<String,List<FeedbackStats>>();
+        for (val state : missing) {
+            val stats = loaded.get(state);
+            val copy = copy(stats);
+            if (copy != null)
+                copies.put(state, copy);
+            else
+                feedbackStats.put(state, stats);
+        }
+        long loadedAt = System.nanoTime();
+        synchronized (this) {
+            for (val copy : copies.entrySet()) {
+                feedbackStats.put(copy.getKey(), copy.getValue());
+                if (loadGeneration == generation)
+                    cache.put(copy.getKey(), new CacheEntry(copy.getValue(), loadedAt));
+            }
+        }
+        return feedbackStats;
+    }
+
+    private boolean isExpired(CacheEntry entry) {
+        return ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos;
+    }
+
+    @Override
+    public String bestFor(String currentState, int minObservations) {
+        return bestOf(getFeedbackStats(currentState), minObservations);
+    }
+
+    @Override
+    protected void addObservation(String previous, String next, int score) {
+        delegate.addObservation(previous, next, score);
+        invalidate(previous);
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        delegate.addObservation(observation);
+        invalidate(observation.getPriorStatement());
+    }
+
+    @Override
+    protected void addObservations(Collection<Observation> observations) {
+        try {
+            delegate.addObservations(observations);
+        } finally {
+            // some may have been written even if the rest failed
+            synchronized (this) {
+                generation++;
+                for (val observation : observations)
+                    cache.remove(observation.getPriorStatement());
+            }
+        }
+    }
+
+    public synchronized void invalidate(String currentState) {
+        generation++;
+        cache.remove(currentState);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -55,6 +55,8 @@ public abstract class CliSession<F extends DisplayableFrame<F>, C extends Contex
                     out.println(displayHelp());
                     break;
                 case QUIT_CMD:
+                    // make sure buffered observations are not lost on exit
+                    persistence.close();
                     out.println("\nBye bye\n");
                     System.exit(0);
                     break;
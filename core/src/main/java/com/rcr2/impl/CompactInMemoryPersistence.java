@@ -0,0 +1,118 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import com.rcr2.Persistence;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * In memory persistence for large numbers of observations.
+ *
+ * Every distinct statement is stored once and referred to by an int id. Counts and cumulative
+ * scores live in parallel primitive arrays keyed by pairs of ids, so an observed pair costs
+ * a few dozen bytes instead of a {@link InMemoryPersistence.FeedbackStats} object with its
+ * boxed counters, map entry and duplicated prior statement. {@link FeedbackStats} objects are
+ * only created as views over those arrays when {@link #getFeedbackStats} is called.
+ * Not thread safe
+ */
+public class CompactInMemoryPersistence<F extends Frame<F>, C extends Context<F,C>> extends AbstractPersistence<F,C> {
+
+    final StatementTable statements = new StatementTable();
+    final PairTable pairs = new PairTable();
+
+    /**
+     * View of the stats of one pair, always reflecting its current values
+     */
+    @RequiredArgsConstructor
+    class FeedbackStats implements Persistence.FeedbackStats {
+        final int index;
+
+        @Override
+        public Integer getCount() {
+            return pairs.count(index);
+        }
+
+        public long getCumulative() {
+            return pairs.cumulative(index);
+        }
+
+        @Override
+        public String getPriorStatement() {
+            return statements.statement(pairs.prior(index));
+        }
+
+        @Override
+        public String getSubsequentStatement() {
+            return statements.statement(pairs.subsequent(index));
+        }
+
+        @Override
+        public double getExpectedValue() {
+            return expectedValue(index);
+        }
+
+        @Override
+        public void increment(int value) {
+            record(getPriorStatement(), getSubsequentStatement(), 1, value);
+        }
+    }
+
+    private double expectedValue(int index) {
+        return (double) pairs.cumulative(index) / (double) pairs.count(index);
+    }
+
+    @Override
+    public Collection<? extends Persistence.FeedbackStats> getFeedbackStats(String currentState) {
+        val prior = statements.idOf(currentState);
+        if (prior < 0)
+            return Collections.emptyList();
+
+        val feedbackStats = new ArrayList<FeedbackStats>();
+        for (int index = pairs.first(prior); index != PairTable.NONE; index = pairs.next(index))
+            feedbackStats.add(new FeedbackStats(index));
+        return feedbackStats;
+    }
+
+    /**
+     * Walks the pairs of the prior state directly rather than through views
+     */
+    @Override
+    public String bestFor(String currentState, int minObservations) {
+        val prior = statements.idOf(currentState);
+        if (prior < 0)
+            return null;
+
+        int best = PairTable.NONE;
+        for (int index = pairs.first(prior); index != PairTable.NONE; index = pairs.next(index)) {
+            if (pairs.count(index) >= minObservations
+                    && (best == PairTable.NONE || expectedValue(index) > expectedValue(best)))
+                best = index;
+        }
+        return best == PairTable.NONE ? null : scriptFor(statements.statement(pairs.subsequent(best)));
+    }
+
+    protected void addObservation(String previous, String next, int score) {
+        record(previous, next, 1, score);
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        record(observation.getPriorStatement(),
+                observation.getSubsequentStatement(),
+                observation.getCount(),
+                observation.getCumulative());
+    }
+
+    /**
+     * Every observation goes through here, so subclasses can override it to store observations elsewhere too
+     * @return the index of the updated pair
+     */
+    int record(String previous, String next, int count, long cumulative) {
+        return pairs.add(statements.intern(previous), statements.intern(next), count, cumulative);
+    }
+}
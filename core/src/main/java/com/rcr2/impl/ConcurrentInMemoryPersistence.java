@@ -0,0 +1,109 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import com.rcr2.Persistence;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In memory persistence that can be shared by sessions running on different threads.
+ * Reads never block, and observations of different pairs never contend with each other.
+ */
+public class ConcurrentInMemoryPersistence<F extends Frame<F>, C extends Context<F,C>> extends AbstractPersistence<F,C> {
+
+    /**
+     * Count and cumulative score are packed into a single long, the count in the high 32 bits
+     * and the signed cumulative score in the low 32 bits. A single atomic add then updates both,
+     * and every read sees a count and cumulative score from the same moment.
+     * As with {@link InMemoryPersistence}, the cumulative score must stay within int range
+     */
+    @RequiredArgsConstructor
+    static class FeedbackStats implements Persistence.FeedbackStats {
+        @Getter final String priorStatement;
+        @Getter final String subsequentStatement;
+        final AtomicLong packed = new AtomicLong();
+
+        static long pack(int count, int cumulative) {
+            return ((long) count << 32) + cumulative;
+        }
+
+        static int count(long packed) {
+            return (int) ((packed - cumulative(packed)) >> 32);
+        }
+
+        static int cumulative(long packed) {
+            return (int) packed;
+        }
+
+        @Override
+        public Integer getCount() {
+            return count(packed.get());
+        }
+
+        public int getCumulative() {
+            return cumulative(packed.get());
+        }
+
+        @Override
+        public void increment(int score) {
+            add(1, score);
+        }
+
+        void add(int count, int cumulative) {
+            packed.addAndGet(pack(count, cumulative));
+        }
+
+        @Override
+        public double getExpectedValue() {
+            val snapshot = packed.get();
+            return (double) cumulative(snapshot) / (double) count(snapshot);
+        }
+
+        @Override
+        public Persistence.FeedbackStats snapshot() {
+            val copy = new FeedbackStats(priorStatement, subsequentStatement);
+            copy.packed.set(packed.get());
+            return copy;
+        }
+    }
+
+    final ConcurrentMap<String,ConcurrentMap<String,FeedbackStats>> data = new ConcurrentHashMap<>();
+
+    @Override
+    public Collection<? extends Persistence.FeedbackStats> getFeedbackStats(String currentState) {
+        val nextMap = data.get(currentState);
+        if (nextMap == null)
+            return Collections.emptyList();
+
+        return nextMap.values();
+    }
+
+    protected void addObservation(String previous, String next, int score) {
+        statsFor(previous, next).add(1, score);
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        statsFor(observation.getPriorStatement(), observation.getSubsequentStatement())
+                .add(observation.getCount(), observation.getCumulative());
+    }
+
+    private FeedbackStats statsFor(String previous, String next) {
+        // plain gets first, computeIfAbsent locks its bin even when the key is present
+        ConcurrentMap<String,FeedbackStats> nextMap = data.get(previous);
+        if (nextMap == null)
+            nextMap = data.computeIfAbsent(previous, p -> new ConcurrentHashMap<>());
+        FeedbackStats stats = nextMap.get(next);
+        if (stats == null)
+            stats = nextMap.computeIfAbsent(next, n -> new FeedbackStats(previous, next));
+        return stats;
+    }
+}
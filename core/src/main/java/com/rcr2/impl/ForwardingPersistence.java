@@ -0,0 +1,58 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Base class for persistences that decorate another persistence.
+ * Every operation is forwarded to the delegate unless overridden
+ */
+@RequiredArgsConstructor
+public abstract class ForwardingPersistence<F extends Frame<F>, C extends Context<F,C>> extends AbstractPersistence<F,C> {
+
+    protected final AbstractPersistence<F,C> delegate;
+
+    @Override
+    public Collection<? extends FeedbackStats> getFeedbackStats(String currentState) {
+        return delegate.getFeedbackStats(currentState);
+    }
+
+    @Override
+    public Map<String,Collection<? extends FeedbackStats>> getFeedbackStats(Collection<String> states) {
+        return delegate.getFeedbackStats(states);
+    }
+
+    @Override
+    public String bestFor(String currentState, int minObservations) {
+        return delegate.bestFor(currentState, minObservations);
+    }
+
+    @Override
+    protected void addObservation(String previous, String next, int score) {
+        delegate.addObservation(previous, next, score);
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        delegate.addObservation(observation);
+    }
+
+    @Override
+    protected void addObservations(Collection<Observation> observations) {
+        delegate.addObservations(observations);
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
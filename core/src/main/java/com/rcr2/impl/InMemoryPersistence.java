@@ -17,6 +17,8 @@ public class InMemoryPersistence<F extends Frame<F>, C extends Context<F,C>> ext
         @Getter final String priorStatement;
         @Getter final String subsequentStatement;
         @Getter Integer cumulative = 0;
+        // when the pair was first observed, which breaks ties between equally good stats
+        long order;
 
         @Override
         public void increment(int score) {
@@ -28,6 +30,11 @@ public class InMemoryPersistence<F extends Frame<F>, C extends Context<F,C>> ext
             cumulative += score;
         }
 
+        void add(int count, int cumulative) {
+            this.count += count;
+            this.cumulative += cumulative;
+        }
+
         @Override
         public double getExpectedValue() {
             return (double)cumulative / (double)count;
@@ -37,6 +44,21 @@ public class InMemoryPersistence<F extends Frame<F>, C extends Context<F,C>> ext
 
     final Map<String,Map<String,Persistence.FeedbackStats>> data = new HashMap<>();
 
+    // best expected value first, then the pair observed first
+    private static final Comparator<FeedbackStats> BEST_FIRST = (a, b) -> {
+        int byValue = a.compareTo(b);
+        return byValue != 0 ? byValue : Long.compare(a.order, b.order);
+    };
+
+    /**
+     * The stats of each observed state that meet each minimum number of observations {@link #bestFor} has been
+     * asked for, best first. Kept up to date by {@link #addObservation}, which moves a stats in O(log n),
+     * so that {@link #bestFor} only reads the first. States never observed are not indexed
+     */
+    final Map<String,Map<Integer,TreeSet<FeedbackStats>>> bestByThreshold = new HashMap<>();
+
+    private long observedPairs = 0;
+
     @Override
     public Collection<? extends Persistence.FeedbackStats> getFeedbackStats(String currentState) {
         val nextMap = data.get(currentState);
@@ -46,9 +68,57 @@ public class InMemoryPersistence<F extends Frame<F>, C extends Context<F,C>> ext
         return nextMap.values();
     }
 
+    @Override
+    public String bestFor(String currentState, int minObservations) {
+        val nextMap = data.get(currentState);
+        if (nextMap == null)
+            return null;
+
+        val byThreshold = bestByThreshold.computeIfAbsent(currentState, s -> new HashMap<>());
+        TreeSet<FeedbackStats> ranked = byThreshold.get(minObservations);
+        if (ranked == null) {
+            ranked = new TreeSet<>(BEST_FIRST);
+            for (val stats : nextMap.values())
+                if (stats.getCount() >= minObservations)
+                    ranked.add((FeedbackStats) stats);
+            byThreshold.put(minObservations, ranked);
+        }
+        return ranked.isEmpty() ? null : scriptFor(ranked.first());
+    }
+
     protected void addObservation(String previous, String next, int score) {
-        data.computeIfAbsent(previous, p -> new HashMap<>())
-                .computeIfAbsent(next, s -> new FeedbackStats(previous, next))
-                .increment(score);
+        record(previous, next, 1, score);
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        record(observation.getPriorStatement(),
+                observation.getSubsequentStatement(),
+                observation.getCount(),
+                observation.getCumulative());
+    }
+
+    private void record(String previous, String next, int count, int cumulative) {
+        val stats = (FeedbackStats) data.computeIfAbsent(previous, p -> new HashMap<>())
+                .computeIfAbsent(next, s -> {
+                    val created = new FeedbackStats(previous, next);
+                    created.order = observedPairs++;
+                    return created;
+                });
+
+        val byThreshold = bestByThreshold.get(previous);
+        if (byThreshold == null) {
+            stats.add(count, cumulative);
+            return;
+        }
+
+        // the sets are ordered by expected value, so take the stats out before it changes
+        for (val ranked : byThreshold.entrySet())
+            if (stats.count > 0 && stats.count >= ranked.getKey())
+                ranked.getValue().remove(stats);
+        stats.add(count, cumulative);
+        for (val ranked : byThreshold.entrySet())
+            if (stats.count >= ranked.getKey())
+                ranked.getValue().add(stats);
     }
 }
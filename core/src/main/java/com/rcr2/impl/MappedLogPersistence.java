@@ -0,0 +1,252 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import lombok.val;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Durable persistence for a single node that needs no external process.
+ *
+ * Observations are appended to a memory mapped log of fixed size records and aggregated in
+ * memory by {@link CompactInMemoryPersistence}. Once the log is full the aggregated index is
+ * written to a snapshot and the log starts over. On startup the snapshot is loaded and the
+ * tail of the log written since is replayed. The directory holds
+ *
+ * <ul>
+ *     <li>{@value #STATEMENTS_FILE}: every distinct statement in id order, as length prefixed UTF-8</li>
+ *     <li>{@value #LOG_FILE}: a header of (generation, record count), then (prior id, next id, count, score) records</li>
+ *     <li>{@value #SNAPSHOT_FILE}: the generation, then (prior id, next id, count, cumulative) for every pair</li>
+ * </ul>
+ *
+ * Observations survive a crash of the process as soon as they are recorded.
+ * {@link #flush()} also forces them to disk. Not thread safe
+ */
+public class MappedLogPersistence<F extends Frame<F>, C extends Context<F,C>> extends CompactInMemoryPersistence<F,C> {
+
+    public static final int DEFAULT_LOG_CAPACITY = 1 << 20;
+
+    static final String STATEMENTS_FILE = "statements.log";
+    static final String LOG_FILE = "observations.log";
+    static final String SNAPSHOT_FILE = "index.snapshot";
+
+    // long generation, int record count, 4 bytes unused
+    private static final int HEADER_SIZE = 16;
+    private static final int GENERATION_OFFSET = 0;
+    private static final int RECORDS_OFFSET = 8;
+    // int prior, int next, int count, int score
+    private static final int RECORD_SIZE = 16;
+
+    private final Path directory;
+    private final FileChannel statementsChannel;
+    private final FileChannel logChannel;
+    private final MappedByteBuffer log;
+    private final int logCapacity;
+
+    private long generation;
+    private int records;
+
+    public MappedLogPersistence(Path directory) {
+        this(directory, DEFAULT_LOG_CAPACITY);
+    }
+
+    /**
+     * @param logCapacity number of records the log holds before it is compacted.
+     *                    An existing larger log keeps its size
+     */
+    public MappedLogPersistence(Path directory, int logCapacity) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            statementsChannel = FileChannel.open(directory.resolve(STATEMENTS_FILE), CREATE, READ, WRITE);
+            loadStatements();
+            val snapshotGeneration = loadSnapshot();
+
+            logChannel = FileChannel.open(directory.resolve(LOG_FILE), CREATE, READ, WRITE);
+            val logSize = Math.max(logChannel.size(), HEADER_SIZE + (long) logCapacity * RECORD_SIZE);
+            this.logCapacity = (int) ((logSize - HEADER_SIZE) / RECORD_SIZE);
+            log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, logSize);
+            replayLog(snapshotGeneration);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void loadStatements() throws IOException {
+        val buffer = ByteBuffer.allocate((int) statementsChannel.size());
+        while (buffer.hasRemaining() && statementsChannel.read(buffer, buffer.position()) >= 0) ;
+        buffer.flip();
+
+        int end = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            val length = buffer.getInt();
+            // a statement cut short by a crash was never referenced by a record
+            if (buffer.remaining() < length)
+                break;
+            val bytes = new byte[length];
+            buffer.get(bytes);
+            statements.intern(new String(bytes, StandardCharsets.UTF_8));
+            end = buffer.position();
+        }
+        statementsChannel.truncate(end);
+        statementsChannel.position(end);
+    }
+
+    private long loadSnapshot() throws IOException {
+        val snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshot))
+            return 0;
+
+        try (val in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            val snapshotGeneration = in.readLong();
+            val size = in.readInt();
+            for (int i = 0; i < size; i++)
+                pairs.add(in.readInt(), in.readInt(), in.readInt(), in.readLong());
+            return snapshotGeneration;
+        }
+    }
+
+    private void replayLog(long snapshotGeneration) {
+        val logGeneration = log.getLong(GENERATION_OFFSET);
+        generation = snapshotGeneration;
+        if (logGeneration < snapshotGeneration) {
+            // a crash after the snapshot was written but before the log was reset,
+            // so every record in the log is already part of the snapshot
+            resetLog();
+            return;
+        }
+        if (logGeneration > snapshotGeneration)
+            throw new IllegalStateException(String.format(
+                    "Log generation %s is ahead of snapshot generation %s in %s", logGeneration, snapshotGeneration, directory));
+
+        records = log.getInt(RECORDS_OFFSET);
+        if (records < 0 || records > logCapacity)
+            throw new IllegalStateException(String.format("Corrupt record count %s in %s", records, directory));
+        for (int i = 0; i < records; i++) {
+            val offset = HEADER_SIZE + i * RECORD_SIZE;
+            pairs.add(log.getInt(offset), log.getInt(offset + 4), log.getInt(offset + 8), log.getInt(offset + 12));
+        }
+    }
+
+    @Override
+    int record(String previous, String next, int count, long cumulative) {
+        val prior = internDurably(previous);
+        val subsequent = internDurably(next);
+        append(prior, subsequent, count, cumulative);
+        return pairs.add(prior, subsequent, count, cumulative);
+    }
+
+    private int internDurably(String statement) {
+        val newId = statements.size();
+        val id = statements.intern(statement);
+        if (id == newId) {
+            val bytes = statement.getBytes(StandardCharsets.UTF_8);
+            val buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+            buffer.putInt(bytes.length).put(bytes).flip();
+            try {
+                while (buffer.hasRemaining())
+                    statementsChannel.write(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Append one observation. A cumulative score beyond the range of a record's score is split over
+     * several records, the first carrying the count and the others none, which replay to the same pair
+     */
+    private void append(int prior, int subsequent, int count, long cumulative) {
+        long parts = Math.max(1, (Math.abs(cumulative) + Integer.MAX_VALUE - 1) / Integer.MAX_VALUE);
+        if (parts > logCapacity)
+            throw new IllegalArgumentException(String.format("Cumulative score %s does not fit in the log", cumulative));
+        if (records + parts > logCapacity)
+            compact();
+
+        long remaining = cumulative;
+        for (int i = 0; i < parts; i++) {
+            int score = (int) Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, remaining));
+            remaining -= score;
+            val offset = HEADER_SIZE + (records + i) * RECORD_SIZE;
+            log.putInt(offset, prior);
+            log.putInt(offset + 4, subsequent);
+            log.putInt(offset + 8, i == 0 ? count : 0);
+            log.putInt(offset + 12, score);
+        }
+        // the records only count once the header includes them, so an observation is replayed whole or not at all
+        records += parts;
+        log.putInt(RECORDS_OFFSET, records);
+    }
+
+    /**
+     * Write the aggregated index to a new snapshot and empty the log.
+     * Happens automatically whenever the log fills up
+     */
+    public void compact() {
+        val snapshot = directory.resolve(SNAPSHOT_FILE);
+        val temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try {
+            // the snapshot refers to statement ids so they have to be on disk first
+            statementsChannel.force(false);
+            try (val channel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                val out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeLong(generation + 1);
+                out.writeInt(pairs.size());
+                for (int i = 0; i < pairs.size(); i++) {
+                    out.writeInt(pairs.prior(i));
+                    out.writeInt(pairs.subsequent(i));
+                    out.writeInt(pairs.count(i));
+                    out.writeLong(pairs.cumulative(i));
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, snapshot, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        generation++;
+        resetLog();
+    }
+
+    private void resetLog() {
+        records = 0;
+        log.putLong(GENERATION_OFFSET, generation);
+        log.putInt(RECORDS_OFFSET, 0);
+        log.force();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            statementsChannel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.force();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            statementsChannel.close();
+            logChannel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.rcr2.impl;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * One or more scores recorded for the same pair of prior and subsequent statements,
+ * merged into a single count and cumulative score
+ */
+@RequiredArgsConstructor
+public class Observation {
+    @Getter final String priorStatement;
+    @Getter final String subsequentStatement;
+    @Getter int count = 0;
+    @Getter int cumulative = 0;
+
+    public Observation(String priorStatement, String subsequentStatement, int count, int cumulative) {
+        this(priorStatement, subsequentStatement);
+        add(count, cumulative);
+    }
+
+    void add(int count, int cumulative) {
+        this.count += count;
+        this.cumulative += cumulative;
+    }
+}
@@ -0,0 +1,56 @@
+package com.rcr2.impl;
+
+import lombok.val;
+
+import java.util.*;
+
+/**
+ * Collects observations and merges those sharing the same prior and subsequent statement.
+ * Not thread safe
+ */
+public class ObservationBatch {
+
+    final Map<String,Map<String,Observation>> data = new LinkedHashMap<>();
+    private int size = 0;
+
+    public void add(String previous, String next, int count, int cumulative) {
+        data.computeIfAbsent(previous, p -> new LinkedHashMap<>())
+                .computeIfAbsent(next, n -> {
+                    size++;
+                    return new Observation(previous, next);
+                })
+                .add(count, cumulative);
+    }
+
+    public void add(String previous, String next, int score) {
+        add(previous, next, 1, score);
+    }
+
+    public void addAll(Collection<Observation> observations) {
+        for (val observation : observations)
+            add(observation.priorStatement, observation.subsequentStatement, observation.count, observation.cumulative);
+    }
+
+    /**
+     * @return the number of distinct prior and subsequent statement pairs
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove and return all merged observations
+     */
+    public List<Observation> drain() {
+        val drained = new ArrayList<Observation>(size);
+        for (val next : data.values())
+            drained.addAll(next.values());
+        data.clear();
+        size = 0;
+        return drained;
+    }
+}
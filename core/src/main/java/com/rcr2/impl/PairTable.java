@@ -0,0 +1,131 @@
+package com.rcr2.impl;
+
+import java.util.Arrays;
+
+/**
+ * Count and cumulative score per pair of prior and subsequent statement ids.
+ *
+ * Pairs are stored densely in parallel primitive arrays in the order they are first seen.
+ * An open addressing table maps each pair to its index, and every pair links to the
+ * previously added pair with the same prior statement so that all pairs for a prior can
+ * be walked without a secondary map. Not thread safe
+ */
+class PairTable {
+
+    static final int NONE = -1;
+
+    private long[] keys = new long[16];
+    private int[] counts = new int[16];
+    private long[] cumulatives = new long[16];
+    // index of the previously added pair with the same prior, or NONE
+    private int[] nextWithPrior = new int[16];
+    // prior id -> index of the most recently added pair with that prior, or NONE
+    private int[] headByPrior = newIndexArray(16);
+    // slot -> pair index, or NONE if the slot is free
+    private int[] slots = newIndexArray(32);
+    private int size = 0;
+
+    private static int[] newIndexArray(int capacity) {
+        int[] array = new int[capacity];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+
+    static long key(int prior, int next) {
+        return ((long) prior << 32) | (next & 0xffffffffL);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Add {@code count} observations with a total score of {@code cumulative} to a pair
+     * @return the index of the pair
+     */
+    int add(int prior, int next, int count, long cumulative) {
+        long key = key(prior, next);
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        for (; slots[slot] != NONE; slot = (slot + 1) & mask) {
+            int index = slots[slot];
+            if (keys[index] == key) {
+                counts[index] += count;
+                cumulatives[index] += cumulative;
+                return index;
+            }
+        }
+
+        int index = size++;
+        if (index == keys.length) {
+            int capacity = index * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            cumulatives = Arrays.copyOf(cumulatives, capacity);
+            nextWithPrior = Arrays.copyOf(nextWithPrior, capacity);
+        }
+        keys[index] = key;
+        counts[index] = count;
+        cumulatives[index] = cumulative;
+
+        if (prior >= headByPrior.length) {
+            int oldLength = headByPrior.length;
+            headByPrior = Arrays.copyOf(headByPrior, Math.max(prior + 1, oldLength * 2));
+            Arrays.fill(headByPrior, oldLength, headByPrior.length, NONE);
+        }
+        nextWithPrior[index] = headByPrior[prior];
+        headByPrior[prior] = index;
+
+        slots[slot] = index;
+        if (size * 2 > slots.length)
+            rehash();
+        return index;
+    }
+
+    private void rehash() {
+        int[] rehashed = newIndexArray(slots.length * 2);
+        int mask = rehashed.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = hash(keys[index]) & mask;
+            while (rehashed[slot] != NONE)
+                slot = (slot + 1) & mask;
+            rehashed[slot] = index;
+        }
+        slots = rehashed;
+    }
+
+    /**
+     * @return the most recently added pair with {@code prior}, or {@link #NONE}
+     */
+    int first(int prior) {
+        return prior < headByPrior.length ? headByPrior[prior] : NONE;
+    }
+
+    /**
+     * @return the pair added before {@code index} with the same prior, or {@link #NONE}
+     */
+    int next(int index) {
+        return nextWithPrior[index];
+    }
+
+    int prior(int index) {
+        return (int) (keys[index] >>> 32);
+    }
+
+    int subsequent(int index) {
+        return (int) keys[index];
+    }
+
+    int count(int index) {
+        return counts[index];
+    }
+
+    long cumulative(int index) {
+        return cumulatives[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,20 @@
+package com.rcr2.impl;
+
+import lombok.Getter;
+
+import java.util.Collection;
+
+/**
+ * Thrown when only some observations of a batch could be stored.
+ * Observations that were stored before the failure are not among the {@code unwritten} ones,
+ * so retrying just those never counts an observation twice
+ */
+public class PartialWriteException extends RuntimeException {
+
+    @Getter private final Collection<Observation> unwritten;
+
+    public PartialWriteException(Collection<Observation> unwritten, Throwable cause) {
+        super(String.format("%d observations were not written", unwritten.size()), cause);
+        this.unwritten = unwritten;
+    }
+}
@@ -0,0 +1,84 @@
+package com.rcr2.impl;
+
+import java.util.Arrays;
+
+/**
+ * Interns statements into dense int ids, starting from 0 in the order they are first seen.
+ * Open addressing over a single int array keeps the table free of per entry objects.
+ * Not thread safe
+ */
+class StatementTable {
+
+    private static final int EMPTY = -1;
+
+    private String[] statements = new String[16];
+    // slot -> id, EMPTY if the slot is free
+    private int[] slots = newSlots(32);
+    private int size = 0;
+
+    private static int[] newSlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the id of {@code statement}, or -1 if it has not been interned
+     */
+    int idOf(String statement) {
+        int mask = slots.length - 1;
+        for (int slot = spread(statement.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY)
+                return -1;
+            if (statements[id].equals(statement))
+                return id;
+        }
+    }
+
+    /**
+     * @return the id of {@code statement}, assigning the next free id if it is new
+     */
+    int intern(String statement) {
+        int mask = slots.length - 1;
+        int slot = spread(statement.hashCode()) & mask;
+        for (; slots[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (statements[slots[slot]].equals(statement))
+                return slots[slot];
+        }
+
+        int id = size++;
+        if (id == statements.length)
+            statements = Arrays.copyOf(statements, id * 2);
+        statements[id] = statement;
+        slots[slot] = id;
+        // keep the load factor at or below one half
+        if (size * 2 > slots.length)
+            rehash();
+        return id;
+    }
+
+    private void rehash() {
+        int[] rehashed = newSlots(slots.length * 2);
+        int mask = rehashed.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = spread(statements[id].hashCode()) & mask;
+            while (rehashed[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            rehashed[slot] = id;
+        }
+        slots = rehashed;
+    }
+
+    String statement(int id) {
+        return statements[id];
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,174 @@
+package com.rcr2.impl;
+
+import com.rcr2.Context;
+import com.rcr2.Frame;
+import lombok.val;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Buffers observations in memory and writes them to the delegate on a single background thread.
+ *
+ * Observations for the same prior and subsequent statement are merged while they wait,
+ * and are written as one batch once {@code batchSize} distinct pairs are pending or
+ * {@code flushIntervalMillis} has passed. If the delegate falls behind so that
+ * {@code maxPending} pairs are waiting, the caller writes the batch itself.
+ *
+ * Buffered observations are not visible to {@link #bestFor} until they are flushed.
+ * Call {@link #flush()} or {@link #close()} before exiting so that none are lost.
+ * Once closed, it refuses further observations with an {@link IllegalStateException}.
+ */
+public class WriteBehindPersistence<F extends Frame<F>, C extends Context<F,C>> extends ForwardingPersistence<F,C> {
+
+    public static final int DEFAULT_BATCH_SIZE = 25;
+    public static final int DEFAULT_MAX_PENDING = 1000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final int batchSize;
+    private final int maxPending;
+
+    // guarded by itself
+    private final ObservationBatch pending = new ObservationBatch();
+    // held while writing to the delegate so that batches are written in order
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor;
+
+    private volatile RuntimeException failure;
+    private volatile boolean closed = false;
+
+    public WriteBehindPersistence(AbstractPersistence<F,C> delegate) {
+        this(delegate, DEFAULT_BATCH_SIZE, DEFAULT_MAX_PENDING, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public WriteBehindPersistence(AbstractPersistence<F,C> delegate, int batchSize, int maxPending, long flushIntervalMillis) {
+        super(delegate);
+        if (batchSize < 1 || maxPending < batchSize)
+            throw new IllegalArgumentException("Require 0 < batchSize <= maxPending");
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            val thread = new Thread(runnable, "rcr2-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::writePending, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void addObservation(String previous, String next, int score) {
+        addObservation(new Observation(previous, next, 1, score));
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        checkOpen();
+        int size;
+        synchronized (pending) {
+            pending.add(observation.getPriorStatement(), observation.getSubsequentStatement(),
+                    observation.getCount(), observation.getCumulative());
+            size = pending.size();
+        }
+        afterAdd(size);
+    }
+
+    @Override
+    protected void addObservations(Collection<Observation> observations) {
+        checkOpen();
+        int size;
+        synchronized (pending) {
+            pending.addAll(observations);
+            size = pending.size();
+        }
+        afterAdd(size);
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Write-behind persistence is closed");
+    }
+
+    private void afterAdd(int size) {
+        if (size >= maxPending)
+            writePending();
+        else if (size >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    writePending();
+                });
+            } catch (RejectedExecutionException e) {
+                // closed after the observations were accepted, so they are written here rather than lost
+                flushScheduled.set(false);
+                writePending();
+            }
+        }
+    }
+
+    /**
+     * Write everything pending to the delegate. Observations that fail to be written
+     * are put back so that a later flush can retry them. When the delegate reports which
+     * of them it did write, only the rest are put back, so that a retry counts none twice
+     */
+    private void writePending() {
+        synchronized (flushLock) {
+            List<Observation> batch;
+            synchronized (pending) {
+                if (pending.isEmpty())
+                    return;
+                batch = pending.drain();
+            }
+            try {
+                delegate.addObservations(batch);
+                failure = null;
+            } catch (PartialWriteException e) {
+                synchronized (pending) {
+                    pending.addAll(e.getUnwritten());
+                }
+                failure = e;
+            } catch (RuntimeException e) {
+                synchronized (pending) {
+                    pending.addAll(batch);
+                }
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct prior and subsequent statement pairs waiting to be written
+     */
+    public int pendingSize() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    @Override
+    public void flush() {
+        writePending();
+        val lastFailure = failure;
+        if (lastFailure != null)
+            throw lastFailure;
+        delegate.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        delegate.close();
+    }
+}
@@ -122,4 +122,39 @@ public class ScriptTest {
         assert "f (text, text)".equals(sessionInput.getArgs().get(1));
     }
 
+    @Test
+    public void testCachedStatementIsRevalidated() {
+        val script = new Script();
+        SessionInput first = script.processStatement(session, "a = f x y;");
+        SessionInput second = script.processStatement(session, "a = f x y;");
+
+        assert first != second;
+        assert first.getArgs() != second.getArgs();
+        assert second.getArgs().equals(first.getArgs());
+        assert "f".equals(second.getFunction());
+
+        // the cached statement is bound to the session it is processed in
+        val other = new Session<TestFrame,TestContext>(new TestFrame(), new TestFeedback(), context, new InMemoryPersistence<>(), TestFrame::new);
+        try {
+            script.processStatement(other, "a = f x y;");
+            assert false;
+        } catch (ScriptParseException e) {
+            assert e.getMessage().contains("`x'");
+        }
+    }
+
+    @Test
+    public void testInSequenceStatementsAreCachedSeparately() {
+        val script = new Script();
+        session.addStep(script.processStatement(session, "__x = e;"), new TestFrame(), true);
+
+        SessionInput sessionInput = script.processStatement(session, "b = h x;", true);
+        assert "__b".equals(sessionInput.getAlias().get());
+        assert "__x".equals(sessionInput.getArgs().get(0));
+
+        sessionInput = script.processStatement(session, "b = h x;");
+        assert "b".equals(sessionInput.getAlias().get());
+        assert "x".equals(sessionInput.getArgs().get(0));
+    }
+
 }
@@ -7,6 +7,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 public class SessionTest {
@@ -39,7 +41,7 @@ public class SessionTest {
         session.imitatedStep("d = f c;");
         session.imitatedStep("e = f d;");
         assert session.getCurrentStep() == 5;
-        assert session.getEntriesByAlias().size() <= Session.MAX_SIZE_IN_SCOPE * 2;
+        assert session.getWorkingMemory().size() <= Session.MAX_SIZE_IN_SCOPE * 2;
         assert !session.inScope("a");
         assert session.inScope("b");
         session.imitatedStep("h;");
@@ -71,4 +73,98 @@ public class SessionTest {
         assert session.getFrame("s2").getOthers() != null;
         assert session.getFrame("s2").getOthers().size() == 2;
     }
+
+    @Test
+    public void testDecisionCandidates() {
+        session.imitatedStep("a = f text;");
+        session.imitatedStep("b = f a;");
+
+        // the state all the entries in scope leave, keyed as update keys it, then the states the newest steps
+        // leave at half the weight each, down to the text
+        val candidates = session.getDecisions().candidates(session);
+        assert new ArrayList<>(candidates.keySet()).equals(Arrays.asList("f (f (text)),f (text),text", "f (f (text))", "text"));
+        assert session.serializePrevious("b").equals("f (f (text)),f (text),text");
+        assert candidates.get("f (f (text)),f (text),text") == 1.0;
+        assert candidates.get("f (f (text))") == 0.5;
+        assert candidates.get("text") == 0.25;
+    }
+
+    @Test
+    public void testDecisionCandidatesRelated() {
+        session.imitatedStep("a = f text;");
+        session.imitatedStep("b = f a;");
+        session.imitatedStep("c = f b;");
+        session.imitatedStep("d = f c;");
+        session.imitatedStep("e = f d;");
+        val a = "f (text)";
+        val b = "f (" + a + ")";
+        val c = "f (" + b + ")";
+        val d = "f (" + c + ")";
+        val e = "f (" + d + ")";
+
+        // the statements gone out of scope stand in for the oldest one in scope
+        val candidates = session.getDecisions().candidates(session);
+        assert candidates.get(String.join(",", e, d, c)) == 1.0;
+        assert candidates.get(String.join(",", e, d)) == 0.5;
+        assert candidates.get(e) == 0.25;
+        assert candidates.get("text") == 0.125;
+        assert candidates.get(String.join(",", e, d, b)) == 0.25;
+        assert candidates.get(String.join(",", e, d, a)) == 0.25;
+        assert candidates.get(String.join(",", e, d, "text")) == 0.25;
+    }
+
+    @Test
+    public void testImitatorStepBacksOffToRelatedState() {
+        val persistence = (InMemoryPersistence<TestFrame,TestContext>) session.persistence;
+        // trained through update with g following c, d and e, often enough to count at the related weight
+        for (int i = 0; i < 8; i++) {
+            val trainer = new Session<>(new TestFrame(), new TestFeedback(), session.getContext(), persistence, TestFrame::new);
+            trainer.imitatedStep("a = f text;");
+            trainer.imitatedStep("b = f a;");
+            trainer.imitatedStep("c = f b;");
+            trainer.imitatedStep("d = f c;");
+            trainer.imitatedStep("e = f d;");
+            trainer.imitatedStep("g;");
+        }
+
+        // the imitator made another step before d, which leaves c out of scope and the state it is in unseen
+        val imitator = new Session<>(new TestFrame(), new TestFeedback(), session.getContext(), persistence, TestFrame::new);
+        imitator.imitatedStep("a = f text;");
+        imitator.imitatedStep("b = f a;");
+        imitator.imitatedStep("c = f b;");
+        imitator.imitatedStep("x = f text;");
+        imitator.imitatedStep("d = f c;");
+        imitator.imitatedStep("e = f d;");
+        val candidates = imitator.getDecisions().candidates(imitator);
+        val current = candidates.keySet().iterator().next();
+        assert persistence.getFeedbackStats(current).isEmpty();
+
+        // with c standing in for the step before d it is the state the trainer learned g in
+        val c = "f (f (f (text)))";
+        val d = "f (" + c + ")";
+        val related = WorkingMemory.stateKey(Arrays.asList(c, d, "f (" + d + ")"));
+        assert candidates.get(related) == DecisionEngine.DEFAULT_RELATED_WEIGHT;
+        assert persistence.getFeedbackStats(related).stream().anyMatch(stats -> stats.getSubsequentStatement().equals("g ()"));
+        assert "g ()".equals(imitator.getDecisions().nextBest(imitator));
+
+        assert imitator.imitatorStep().isPresent();
+    }
+
+    @Test
+    public void testImitatorStepLooksUpCandidatesAtOnce() {
+        val lookups = new ArrayList<List<String>>();
+        val persistence = new InMemoryPersistence<TestFrame,TestContext>() {
+            @Override
+            public String bestFor(List<String> states, double[] weights, int minObservations) {
+                lookups.add(states);
+                return "g;";
+            }
+        };
+        val imitator = new Session<>(new TestFrame(), new TestFeedback(), session.getContext(), persistence, TestFrame::new);
+        imitator.imitatedStep("a = f text;");
+
+        assert imitator.imitatorStep().isPresent();
+        assert lookups.size() == 1;
+        assert lookups.get(0).equals(Arrays.asList("f (text),text", "text"));
+    }
 }
@@ -4,8 +4,10 @@ import com.rcr2.StateNodeTree.StateNode;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class StateTest {
 
@@ -21,16 +23,16 @@ public class StateTest {
         assert "b".equals(stateNodeABC.parent.arg);
 
         assert tree.abstractionEntries.size() == 3;
-        assert tree.abstractionEntries.get("[c]") != null;
-        assert tree.abstractionEntries.get("[c]").get("[a, b]") != null;
-        assert tree.abstractionEntries.get("[c]").get("[a, b]").equals(stateNodeABC);
+        assert tree.abstraction(Arrays.asList("a", "b"), Arrays.asList("c")) != null;
+        assert tree.abstraction(Arrays.asList("a", "b"), Arrays.asList("c")).equals(stateNodeABC);
+        assert tree.abstraction(Arrays.asList("b"), Arrays.asList("c")) == null;
 
         Set<String> dependencies2 = new HashSet<>(Arrays.asList("a", "b", "d"));
         StateNode stateNodeABD = tree.find(dependencies2);
 
         assert stateNodeABD != null;
-        assert tree.abstractionEntries.get("[d]").get("[a, b]") != null;
-        assert tree.abstractionEntries.get("[d]").get("[a, b]").equals(stateNodeABD);
+        assert tree.abstraction(Arrays.asList("a", "b"), Arrays.asList("d")) != null;
+        assert tree.abstraction(Arrays.asList("a", "b"), Arrays.asList("d")).equals(stateNodeABD);
 
         Set<String> dependencies3 = new HashSet<>(Arrays.asList("1", "b", "c"));
         StateNode stateNode1BC = tree.find(dependencies3);
@@ -42,4 +44,68 @@ public class StateTest {
         assert related.contains(stateNode1BC.parent);
     }
 
+    @Test
+    public void testSerialize() {
+        StateNodeTree tree = new StateNodeTree();
+        StateNode stateNodeAB = tree.find(new HashSet<>(Arrays.asList("a", "b")));
+        assert "b:a:null".equals(stateNodeAB.serialize());
+        assert stateNodeAB.serialize() == stateNodeAB.serialize();
+
+        StateNode stateNodeABCD = tree.find(new HashSet<>(Arrays.asList("a", "b", "c", "d")));
+        assert "d:c:b:a:null".equals(stateNodeABCD.serialize());
+        assert "c:b:a:null".equals(stateNodeABCD.parent.serialize());
+        assert tree.root.serialize() == null;
+    }
+
+    @Test
+    public void testPrunesLeastRecentlyFound() {
+        StateNodeTree tree = new StateNodeTree();
+        tree.setMaxNodes(8);
+        Set<String> hot = new HashSet<>(Arrays.asList("a", "b"));
+        StateNode stateNodeAB = tree.find(hot);
+
+        for (int i = 0; i < 20; i++) {
+            tree.find(new HashSet<>(Arrays.asList("x" + i, "y" + i)));
+            tree.find(hot);
+            assert tree.size() <= 8;
+        }
+
+        // the state found all along is still the same node, while the cold ones were dropped
+        assert tree.find(hot) == stateNodeAB;
+        assert tree.abstraction(Arrays.asList("a"), Arrays.asList("b")) == stateNodeAB;
+        assert tree.abstraction(Arrays.asList("x0"), Arrays.asList("y0")) == null;
+        assert tree.abstractionEntries.size() < 8;
+    }
+
+    @Test
+    public void testPruneReleasesLabels() {
+        StateNodeTree tree = new StateNodeTree();
+        tree.setMaxNodes(8);
+        Set<String> hot = new HashSet<>(Arrays.asList("a", "b"));
+        StateNode stateNodeAB = tree.find(hot);
+
+        for (int i = 0; i < 100; i++) {
+            tree.find(new HashSet<>(Arrays.asList("x" + i, "y" + i)));
+            tree.find(hot);
+            assert tree.labelCount() <= 8 + 2;
+        }
+
+        // reused labels neither lead to nor abstract over the states they were dropped with
+        assert tree.find(hot) == stateNodeAB;
+        assert "b:a:null".equals(stateNodeAB.serialize());
+        assert tree.abstraction(Arrays.asList("x0"), Arrays.asList("y0")) == null;
+        StateNode stateNodeX0Y0 = tree.find(new TreeSet<>(Arrays.asList("x0", "y0")));
+        assert "y0:x0:null".equals(stateNodeX0Y0.serialize());
+        assert tree.abstraction(Arrays.asList("x0"), Arrays.asList("y0")) == stateNodeX0Y0;
+        assert tree.abstraction(Arrays.asList("a"), Arrays.asList("b")) == stateNodeAB;
+    }
+
+    @Test
+    public void testBoundedByDefault() {
+        StateNodeTree tree = new StateNodeTree();
+        for (int i = 0; i < StateNodeTree.DEFAULT_MAX_NODES + 10; i++)
+            tree.find(Collections.singleton("x" + i));
+        assert tree.size() <= StateNodeTree.DEFAULT_MAX_NODES;
+        assert tree.labelCount() <= StateNodeTree.DEFAULT_MAX_NODES;
+    }
 }
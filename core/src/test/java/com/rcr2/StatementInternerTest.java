@@ -0,0 +1,72 @@
+package com.rcr2;
+
+import com.rcr2.impl.InMemoryPersistence;
+import com.rcr2.impl.InMemorySequenceProvider;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class StatementInternerTest {
+
+    @Test
+    public void testInternsStructurallyEqualStatements() {
+        val interner = new StatementInterner();
+        val text = interner.text();
+        val inner = interner.intern("", "f", new Statement[] {text});
+        val outer = interner.intern("", "g", new Statement[] {inner, text});
+
+        assert "f (text)".equals(inner.getText());
+        assert "g (f (text), text)".equals(outer.getText());
+        assert interner.intern("", "f", new Statement[] {text}) == inner;
+        assert interner.intern("", "g", new Statement[] {inner, text}) == outer;
+        assert interner.intern(Frame.EMPTY_ANNOTATION, "f", new Statement[] {text}) != inner;
+        assert interner.intern("", "g", new Statement[] {text, inner}).getId() != outer.getId();
+        assert interner.lookup("g (f (text), text)") == outer;
+        assert interner.lookup("text") == text;
+        assert interner.lookup("h (text)") == null;
+    }
+
+    @Test
+    public void testDependenciesOfSharedArgs() {
+        val interner = new StatementInterner();
+        Statement statement = interner.text();
+        // each statement uses the one before twice, so a walk of its args would visit 2^depth of them
+        for (int i = 0; i < 16; i++)
+            statement = interner.intern("", "g", new Statement[] {statement, statement});
+
+        val dependencies = statement.dependencies();
+        assert dependencies.length == 16;
+        assert dependencies == statement.dependencies();
+        for (int i = 1; i < dependencies.length; i++)
+            assert dependencies[i - 1].getText().compareTo(dependencies[i].getText()) < 0;
+        assert "text".equals(interner.intern("", "f", new Statement[] {interner.text()}).dependencies()[0].getText());
+    }
+
+    @Test
+    public void testSessionInputsShareStatements() {
+        val context = new TestContext(new InMemorySequenceProvider<>());
+        context.withPureFunction("e", 0, args -> Optional.of(new TestFrame()));
+        context.withPureFunction("h", 1, args -> Optional.of(new TestFrame()));
+        val session = new Session<TestFrame,TestContext>(
+                new TestFrame(),
+                new TestFeedback(),
+                context,
+                new InMemoryPersistence<>(),
+                TestFrame::new
+        );
+
+        val x = new Script().processStatement(session, "x = e;");
+        session.addStep(x, new TestFrame(), false);
+        val y = new Script().processStatement(session, "y = h x;");
+        session.addStep(y, new TestFrame(), false);
+        val z = new Script().processStatement(session, "z = h x;");
+
+        assert "h (e ())".equals(y.serializeStatement());
+        assert y.getStatement() == z.getStatement();
+        assert y.getStatement().getArg(0) == x.getStatement();
+        assert y.dependsOn().contains("e ()");
+        // nested expressions are looked up by their serialization
+        assert session.getFrame("e ()") != null;
+    }
+}
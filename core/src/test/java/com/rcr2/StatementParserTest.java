@@ -0,0 +1,73 @@
+package com.rcr2;
+
+import com.rcr2.impl.InMemorySequenceProvider;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class StatementParserTest {
+
+    final Session<TestFrame,TestContext> session = new TestSession(new TestContext(new InMemorySequenceProvider<>()));
+
+    private static final String[] HANDLED = {
+            "a = f x y;",
+            "a = f x y ;",
+            "a=b = f x;",
+            "f x =y;",
+            "__0 = f text;",
+            "g;",
+            "a = e;",
+            "g\tx\ny;",
+            "a = h (text);",
+            "a = f (x, y);",
+            "a = f (x,y);",
+            "a = e ();",
+    };
+
+    private static final String[] NOT_HANDLED = {
+            "a = h (h (text));",
+            "a = h (h (text), f (text, text));",
+            "a = f x (y);",
+            "a = f x y",
+            "a = f x y; ",
+            " a = f x;",
+            "a = f ( x);",
+            "a = f (x );",
+            "a = h(text);",
+            "= f;",
+            "a = = f;",
+            "a = ;",
+            "a = f x, y;",
+            "h (text)",
+            "",
+    };
+
+    @Test
+    public void testMatchesAntlr() {
+        for (val input : HANDLED) {
+            val fast = StatementParser.parse(session, input);
+            assert fast != null : input;
+            val antlr = new Script().parseWithAntlr(session, input);
+            assert fast.getAlias().equals(antlr.getAlias()) : input;
+            assert fast.getFunction().equals(antlr.getFunction()) : input;
+            assert fast.getArgs().equals(antlr.getArgs()) : input + " " + fast.getArgs() + " " + antlr.getArgs();
+        }
+    }
+
+    @Test
+    public void testLeavesEverythingElseToAntlr() {
+        for (val input : NOT_HANDLED)
+            assert StatementParser.parse(session, input) == null : input;
+    }
+
+    @Test
+    public void testParsesArgs() {
+        val sessionInput = StatementParser.parse(session, "a = f (x, y);");
+        assert "a".equals(sessionInput.getAlias().get());
+        assert "f".equals(sessionInput.getFunction());
+        assert Arrays.asList("x", "y").equals(sessionInput.getArgs());
+
+        assert !StatementParser.parse(session, "g x;").getAlias().isPresent();
+    }
+}
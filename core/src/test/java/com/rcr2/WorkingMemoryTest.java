@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.SortedSet;
@@ -92,7 +94,98 @@ public class WorkingMemoryTest {
             session.addStep(result, new TestFrame(), false);
         }
 
-        System.out.println("Working memory final size " + session.getEntriesByAlias().size());
+        System.out.println("Working memory final size " + session.getWorkingMemory().size());
 
     }
+
+    @Test
+    public void testEvictsOldestEntries() {
+        Session<TestFrame,TestContext> session = new TestSession(context);
+        String previous = "text";
+        for (int i = 0; i < Session.MAX_ARCHIVE_SIZE + 2; i++) {
+            session.addStep(script.processStatement(session, "a" + i + " = f " + previous + ";"), new TestFrame(), false);
+            previous = "a" + i;
+        }
+
+        WorkingMemory<TestFrame,TestContext> memory = session.getWorkingMemory();
+        assert memory.size() == Session.MAX_ARCHIVE_SIZE;
+        assert session.getFrame("a0") == null;
+        assert session.getFrame("a1") == null;
+        assert session.getFrame("a2") != null;
+        assert memory.mostRecent().getSessionInput().getAlias().get().equals("a11");
+        assert memory.leastRecent().getSessionInput().getAlias().get().equals("a2");
+
+        int step = -1;
+        int entries = 0;
+        for (Session.Entry<TestFrame,TestContext> entry : memory) {
+            assert entry.getStep() > step;
+            step = entry.getStep();
+            entries++;
+        }
+        assert entries == Session.MAX_ARCHIVE_SIZE;
+        assert session.display().split("\n").length == Session.MAX_SIZE_IN_SCOPE;
+    }
+
+    @Test
+    public void testRebindingAnAlias() {
+        Session<TestFrame,TestContext> session = new TestSession(context);
+        session.addStep(script.processStatement(session, "a = f text;"), new TestFrame(), false);
+        session.addStep(script.processStatement(session, "b = f a;"), new TestFrame(), false);
+        SessionInput<TestFrame,TestContext> rebound = script.processStatement(session, "a = f b;");
+        session.addStep(rebound, new TestFrame(), false);
+
+        WorkingMemory<TestFrame,TestContext> memory = session.getWorkingMemory();
+        assert memory.size() == 3;
+        assert memory.mostRecent().getSessionInput() == rebound;
+        assert session.getInput("a") == rebound;
+        // the entry a was bound to first can still be found by its statement
+        assert session.getInput("f (text)") != null;
+
+        List<String> aliases = new ArrayList<>();
+        for (Session.Entry<TestFrame,TestContext> entry : memory)
+            aliases.add(entry.getSessionInput().getAlias().get());
+        assert aliases.equals(Arrays.asList("text", "b", "a"));
+    }
+
+    @Test
+    public void testRemoveInSequence() {
+        Session<TestFrame,TestContext> session = new TestSession(context);
+        session.addStep(script.processStatement(session, "a = f text;"), new TestFrame(), false);
+        session.addStep(script.processStatement(session, "b = f text;", true), new TestFrame(), true);
+
+        WorkingMemory<TestFrame,TestContext> memory = session.getWorkingMemory();
+        assert memory.size() == 3;
+        memory.removeInSequence();
+        assert memory.size() == 2;
+        assert session.getFrame("__b") == null;
+        assert memory.mostRecent().getSessionInput().getAlias().get().equals("a");
+    }
+
+    @Test
+    public void testStateKeysFollowTheMemory() {
+        Session<TestFrame,TestContext> session = new TestSession(context);
+        String previous = "text";
+        for (int i = 0; i < Session.MAX_ARCHIVE_SIZE + 3; i++) {
+            // rebind a every third step, so that some entries are only found by their statement
+            String alias = i % 3 == 0 ? "a" : "a" + i;
+            session.addStep(script.processStatement(session, alias + " = h " + previous + " text;"), new TestFrame(), false);
+            previous = alias;
+
+            for (Session.Entry<TestFrame,TestContext> entry : session.getWorkingMemory()) {
+                String arg = entry.getSessionInput().getAlias().get();
+                assert session.serializePrevious(arg).equals(serializePrevious(session, entry.getStep()));
+            }
+        }
+        assert session.serializePrevious("missing") == null;
+    }
+
+    // the key as it was built before the working memory cached it
+    private static String serializePrevious(Session<TestFrame,TestContext> session, int step) {
+        List<String> serializations = new ArrayList<>();
+        for (Session.Entry<TestFrame,TestContext> entry : session.getWorkingMemory())
+            if (entry.getStep() <= step && entry.getStep() > session.getCurrentStep() - Session.MAX_SIZE_IN_SCOPE)
+                serializations.add(entry.getSessionInput().serializeStatement());
+        Collections.sort(serializations);
+        return serializations.isEmpty() ? Session.DEFAULT_STATE_SERIALIZATION : String.join(",", serializations);
+    }
 }
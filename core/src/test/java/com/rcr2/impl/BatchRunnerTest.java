@@ -0,0 +1,71 @@
+package com.rcr2.impl;
+
+import com.rcr2.*;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchRunnerTest {
+
+    @Test
+    public void testRunsEpisodes() {
+        val persistence = new InMemoryPersistence<TestFrame,TestContext>();
+        val sessions = new AtomicInteger();
+        val ticks = new AtomicInteger();
+        val runner = new BatchRunner<TestFrame,TestContext>(() -> {
+            sessions.incrementAndGet();
+            val context = new TestContext(new InMemorySequenceProvider<>());
+            context.withPureFunction("f", 1, args -> Optional.of(new TestFrame()));
+            context.withSideEffect("g", 1, args -> Optional.of(new TestFrame()));
+            return new Session<>(new TestFrame(), new TestFeedback(), context, persistence, TestFrame::new);
+        }, session -> ticks.incrementAndGet());
+
+        val report = runner.run(3, 20);
+
+        assert sessions.get() == 3;
+        assert ticks.get() == 60;
+        assert report.getSteps() == 60;
+        assert report.getEpisodes() == 3;
+        assert report.getFailedSteps() < report.getSteps();
+        assert report.getStepsPerSecond() > 0;
+        assert !persistence.data.isEmpty();
+    }
+
+    @Test
+    public void testEndsEpisodeEarly() {
+        val runner = new BatchRunner<TestFrame,TestContext>(() -> {
+            val context = new TestContext(new InMemorySequenceProvider<>());
+            context.withSideEffect("g", 1, args -> Optional.of(new TestFrame()));
+            return new TestSession(context);
+        }, session -> {});
+        runner.setEpisodeOver(session -> session.getCurrentStep() >= 0);
+
+        val report = runner.run(2, 20);
+        assert report.getSteps() == 0;
+        assert report.getEpisodes() == 2;
+    }
+
+    @Test
+    public void testRunsEpisodesInParallel() {
+        val persistence = new ConcurrentInMemoryPersistence<TestFrame,TestContext>();
+        val ticks = new AtomicInteger();
+        val runner = new BatchRunner<TestFrame,TestContext>(() -> {
+            val context = new TestContext(new InMemorySequenceProvider<>());
+            context.withPureFunction("f", 1, args -> Optional.of(new TestFrame()));
+            context.withSideEffect("g", 1, args -> Optional.of(new TestFrame()));
+            return new Session<>(new TestFrame(), new TestFeedback(), context, persistence, TestFrame::new);
+        }, session -> ticks.incrementAndGet());
+
+        val pool = new ForkJoinPool(4);
+        val report = runner.run(16, 50, pool);
+        pool.shutdown();
+
+        assert ticks.get() == 16 * 50;
+        assert report.getSteps() == 16 * 50;
+        assert report.getEpisodes() == 16;
+        assert !persistence.getFeedbackStats(Session.DEFAULT_STATE_SERIALIZATION).isEmpty();
+    }
+}
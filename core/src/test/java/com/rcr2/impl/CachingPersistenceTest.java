@@ -0,0 +1,119 @@
+package com.rcr2.impl;
+
+import com.rcr2.*;
+import lombok.val;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static com.rcr2.Session.DEFAULT_STATE_SERIALIZATION;
+
+public class CachingPersistenceTest {
+
+    Script script;
+    TestContext context;
+    InMemoryPersistence<TestFrame,TestContext> delegate;
+
+    @Before
+    public void setup() {
+        script = new Script();
+        context = new TestContext(new InMemorySequenceProvider<>());
+        context.withPureFunction("f", 1, args -> Optional.of(new TestFrame()));
+        context.withPureFunction("g", 1, args -> Optional.of(new TestFrame()));
+        delegate = new InMemoryPersistence<>();
+    }
+
+    private void observe(Persistence<TestFrame,TestContext> persistence, String statement, int score) {
+        val session = new TestSession(context);
+        session.addStep(script.processStatement(session, statement), new TestFrame(), false);
+        persistence.update(session, score);
+    }
+
+    @Test
+    public void testHitsAndInvalidation() {
+        val persistence = new CachingPersistence<>(delegate);
+        observe(persistence, "a = f text;", 1);
+        observe(persistence, "a = f text;", 1);
+
+        assert "f (text)".equals(persistence.bestFor(DEFAULT_STATE_SERIALIZATION, 2));
+        assert persistence.getMisses() == 1;
+        assert "f (text)".equals(persistence.bestFor(DEFAULT_STATE_SERIALIZATION, 2));
+        assert persistence.getHits() == 1;
+
+        // writing through the cache must invalidate the state so that g becomes visible
+        observe(persistence, "a = g text;", 5);
+        observe(persistence, "a = g text;", 5);
+
+        assert "g (text)".equals(persistence.bestFor(DEFAULT_STATE_SERIALIZATION, 2));
+        assert persistence.getMisses() == 2;
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        val persistence = new CachingPersistence<>(delegate, 2, CachingPersistence.NO_EXPIRY);
+        persistence.getFeedbackStats("s1");
+        persistence.getFeedbackStats("s2");
+        persistence.getFeedbackStats("s1");
+        persistence.getFeedbackStats("s3");
+
+        assert persistence.size() == 2;
+        assert persistence.getEvictions() == 1;
+
+        // s2 was least recently used so it is the one that was evicted
+        persistence.getFeedbackStats("s1");
+        assert persistence.getHits() == 2;
+        persistence.getFeedbackStats("s2");
+        assert persistence.getMisses() == 4;
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        val persistence = new CachingPersistence<>(delegate, 10, 1);
+        persistence.getFeedbackStats("s1");
+        Thread.sleep(5);
+        persistence.getFeedbackStats("s1");
+
+        assert persistence.getHits() == 0;
+        assert persistence.getMisses() == 2;
+    }
+
+    @Test
+    public void testBatchedLookup() {
+        val persistence = new CachingPersistence<>(delegate);
+        observe(persistence, "a = f text;", 1);
+        persistence.getFeedbackStats("s1");
+
+        val stats = persistence.getFeedbackStats(Arrays.asList("s1", DEFAULT_STATE_SERIALIZATION, "s2"));
+        assert stats.size() == 3;
+        assert stats.get(DEFAULT_STATE_SERIALIZATION).size() == 1;
+        assert stats.get("s2").isEmpty();
+        assert persistence.getHits() == 1;
+        assert persistence.getMisses() == 3;
+
+        // the states loaded together are cached one by one
+        persistence.getFeedbackStats(Arrays.asList(DEFAULT_STATE_SERIALIZATION, "s2"));
+        assert persistence.getHits() == 3;
+        assert persistence.size() == 3;
+    }
+
+    @Test
+    public void testPassesLargeStatesThrough() {
+        val persistence = new CachingPersistence<>(delegate, 10, CachingPersistence.NO_EXPIRY, 2);
+        observe(persistence, "a = f text;", 1);
+        assert persistence.getFeedbackStats(DEFAULT_STATE_SERIALIZATION).size() == 1;
+        assert persistence.size() == 1;
+
+        observe(persistence, "a = g text;", 1);
+        context.withPureFunction("h", 1, args -> Optional.of(new TestFrame()));
+        observe(persistence, "a = h text;", 1);
+
+        // three stats are more than are cached per state, so the delegate's own collection is returned
+        val stats = persistence.getFeedbackStats(DEFAULT_STATE_SERIALIZATION);
+        assert stats == delegate.getFeedbackStats(DEFAULT_STATE_SERIALIZATION);
+        assert persistence.getFeedbackStats(Arrays.asList(DEFAULT_STATE_SERIALIZATION)).get(DEFAULT_STATE_SERIALIZATION).size() == 3;
+        assert persistence.size() == 0;
+        assert persistence.getHits() == 0;
+    }
+}
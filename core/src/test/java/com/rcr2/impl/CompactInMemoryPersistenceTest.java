@@ -0,0 +1,60 @@
+package com.rcr2.impl;
+
+import com.rcr2.*;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static com.rcr2.Session.DEFAULT_STATE_SERIALIZATION;
+
+public class CompactInMemoryPersistenceTest {
+
+    @Test
+    public void testUpdateAndBestFor() {
+        val context = new TestContext(new InMemorySequenceProvider<>());
+        context.withPureFunction("f", 1, args -> Optional.of(new TestFrame()));
+        context.withPureFunction("g", 1, args -> Optional.of(new TestFrame()));
+        val script = new Script();
+        val persistence = new CompactInMemoryPersistence<TestFrame,TestContext>();
+
+        for (val statement : new String[] {"a = f text;", "a = f text;", "a = g text;", "a = g text;"}) {
+            val session = new TestSession(context);
+            session.addStep(script.processStatement(session, statement), new TestFrame(), false);
+            persistence.update(session, statement.contains("g") ? 2 : 1);
+        }
+
+        assert persistence.bestFor(DEFAULT_STATE_SERIALIZATION, 3) == null;
+        assert "g (text)".equals(persistence.bestFor(DEFAULT_STATE_SERIALIZATION, 2));
+
+        boolean foundG = false;
+        for (val s : persistence.getFeedbackStats(DEFAULT_STATE_SERIALIZATION)) {
+            assert DEFAULT_STATE_SERIALIZATION.equals(s.getPriorStatement());
+            if ("g (text)".equals(s.getSubsequentStatement())) {
+                foundG = true;
+                assert s.getCount() == 2;
+                assert s.getExpectedValue() == 2.0;
+            }
+        }
+        assert foundG;
+    }
+
+    @Test
+    public void testGrowth() {
+        val persistence = new CompactInMemoryPersistence<TestFrame,TestContext>();
+        for (int prior = 0; prior < 300; prior++)
+            for (int next = 0; next < 50; next++)
+                persistence.addObservation("p" + prior, "n" + next, next);
+
+        assert persistence.pairs.size() == 300 * 50;
+        assert persistence.statements.size() == 300 + 50;
+        for (int prior = 0; prior < 300; prior += 37) {
+            assert persistence.getFeedbackStats("p" + prior).size() == 50;
+            assert "n49".equals(persistence.bestFor("p" + prior, 1));
+        }
+
+        persistence.addObservation("p0", "n0", 1000);
+        assert "n0".equals(persistence.bestFor("p0", 2));
+        assert persistence.getFeedbackStats("unknown").isEmpty();
+    }
+}
@@ -0,0 +1,104 @@
+package com.rcr2.impl;
+
+import com.rcr2.TestContext;
+import com.rcr2.TestFrame;
+import com.rcr2.impl.ConcurrentInMemoryPersistence.FeedbackStats;
+import lombok.val;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ConcurrentInMemoryPersistenceTest {
+
+    @Test
+    public void testPacking() {
+        for (int count : new int[] {0, 1, 7, Integer.MAX_VALUE}) {
+            for (int cumulative : new int[] {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+                val packed = FeedbackStats.pack(count, cumulative);
+                assert FeedbackStats.count(packed) == count;
+                assert FeedbackStats.cumulative(packed) == cumulative;
+            }
+        }
+
+        val stats = new FeedbackStats("a", "b");
+        stats.increment(-3);
+        stats.increment(1);
+        stats.increment(-2);
+        assert stats.getCount() == 3;
+        assert stats.getCumulative() == -4;
+    }
+
+    @Test
+    public void testConcurrentObservations() throws InterruptedException {
+        val persistence = new ConcurrentInMemoryPersistence<TestFrame,TestContext>();
+        final int threads = 8;
+        final int observations = 10_000;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int score = t % 2 == 0 ? 1 : -2;
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < observations; i++) {
+                    persistence.addObservation("s", "shared", score);
+                    persistence.addObservation("s", "n" + (i % 10), 1);
+                }
+            }));
+        }
+        for (val worker : workers)
+            worker.start();
+        for (val worker : workers)
+            worker.join();
+
+        val shared = persistence.data.get("s").get("shared");
+        assert shared.getCount() == threads * observations;
+        assert shared.getCumulative() == (threads / 2) * observations * (1 - 2);
+        assert persistence.getFeedbackStats("s").size() == 11;
+        // every n* averages 1 while the shared pair averages below 0
+        assert persistence.bestFor("s", 1).startsWith("n");
+    }
+
+    @Test
+    public void testBestForWhileObserving() throws InterruptedException {
+        val persistence = new ConcurrentInMemoryPersistence<TestFrame,TestContext>();
+        // enough candidates that a sort of them would merge runs, whose order the writers keep changing
+        final int candidates = 64;
+        for (int i = 0; i < candidates; i++)
+            persistence.addObservation("s", "n" + i, i % 3);
+
+        val done = new AtomicBoolean(false);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int seed = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; !done.get(); i++)
+                    persistence.addObservation("s", "n" + ((i * 7 + seed) % candidates), (i + seed) % 5 - 2);
+            }));
+        }
+        for (val writer : writers)
+            writer.start();
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                assert persistence.bestFor("s", 1) != null;
+                assert persistence.bestFor(Arrays.asList("s", "t"), new double[] {1, 0.5}, 1) != null;
+            }
+        } finally {
+            done.set(true);
+            for (val writer : writers)
+                writer.join();
+        }
+    }
+
+    @Test
+    public void testSnapshotDoesNotChange() {
+        val stats = new FeedbackStats("a", "b");
+        stats.increment(2);
+        val snapshot = stats.snapshot();
+        stats.increment(-4);
+        assert snapshot.getCount() == 1;
+        assert snapshot.getExpectedValue() == 2.0;
+        assert stats.getCount() == 2;
+    }
+}
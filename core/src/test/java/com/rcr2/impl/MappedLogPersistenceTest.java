@@ -0,0 +1,107 @@
+package com.rcr2.impl;
+
+import com.rcr2.TestContext;
+import com.rcr2.TestFrame;
+import lombok.val;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+public class MappedLogPersistenceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static int count(MappedLogPersistence<TestFrame,TestContext> persistence, String previous, String next) {
+        for (val stats : persistence.getFeedbackStats(previous))
+            if (next.equals(stats.getSubsequentStatement()))
+                return stats.getCount();
+        return 0;
+    }
+
+    @Test
+    public void testRecoversFromLog() throws IOException {
+        val directory = folder.newFolder().toPath();
+        val persistence = new MappedLogPersistence<TestFrame,TestContext>(directory);
+        persistence.addObservation("text", "f (text)", 1);
+        persistence.addObservation("text", "f (text)", 1);
+        persistence.addObservation("text", "g (text)", 3);
+        persistence.addObservation(new Observation("text", "g (text)", 2, 4));
+        persistence.close();
+
+        val recovered = new MappedLogPersistence<TestFrame,TestContext>(directory);
+        assert count(recovered, "text", "f (text)") == 2;
+        assert count(recovered, "text", "g (text)") == 3;
+        assert "g (text)".equals(recovered.bestFor("text", 2));
+        assert !Files.exists(directory.resolve(MappedLogPersistence.SNAPSHOT_FILE));
+        recovered.close();
+    }
+
+    @Test
+    public void testCompactsWhenLogIsFull() throws IOException {
+        val directory = folder.newFolder().toPath();
+        val persistence = new MappedLogPersistence<TestFrame,TestContext>(directory, 4);
+        for (int i = 0; i < 10; i++)
+            persistence.addObservation("p" + (i % 3), "n" + (i % 2), i);
+        // not closed or flushed, as if the process had died
+        assert Files.exists(directory.resolve(MappedLogPersistence.SNAPSHOT_FILE));
+
+        val recovered = new MappedLogPersistence<TestFrame,TestContext>(directory, 4);
+        assert recovered.pairs.size() == persistence.pairs.size();
+        for (int p = 0; p < 3; p++)
+            for (int n = 0; n < 2; n++)
+                assert count(recovered, "p" + p, "n" + n) == count(persistence, "p" + p, "n" + n);
+        assert recovered.bestFor("p0", 1).equals(persistence.bestFor("p0", 1));
+
+        // keeps appending after recovery
+        recovered.addObservation("p0", "n0", 100);
+        recovered.close();
+        persistence.close();
+        val reopened = new MappedLogPersistence<TestFrame,TestContext>(directory, 4);
+        assert "n0".equals(reopened.bestFor("p0", 1));
+        reopened.close();
+    }
+
+    @Test
+    public void testSplitsLargeCumulativeScores() throws IOException {
+        val directory = folder.newFolder().toPath();
+        val persistence = new MappedLogPersistence<TestFrame,TestContext>(directory, 8);
+        long cumulative = 5L * Integer.MAX_VALUE + 3;
+        persistence.record("p", "n", 2, cumulative);
+        persistence.record("p", "m", 1, -cumulative);
+        persistence.close();
+
+        val recovered = new MappedLogPersistence<TestFrame,TestContext>(directory, 8);
+        assert count(recovered, "p", "n") == 2;
+        assert count(recovered, "p", "m") == 1;
+        for (val stats : recovered.getFeedbackStats("p"))
+            assert stats.getExpectedValue() == ("n".equals(stats.getSubsequentStatement()) ? cumulative / 2.0 : -cumulative);
+        recovered.close();
+    }
+
+    @Test
+    public void testIgnoresTruncatedStatement() throws IOException {
+        val directory = folder.newFolder().toPath();
+        val persistence = new MappedLogPersistence<TestFrame,TestContext>(directory);
+        persistence.addObservation("a", "b", 1);
+        persistence.close();
+
+        // half written statement at the end of the dictionary
+        Files.write(directory.resolve(MappedLogPersistence.STATEMENTS_FILE),
+                new byte[] {0, 0, 0, 9, 'x'},
+                StandardOpenOption.APPEND);
+
+        val recovered = new MappedLogPersistence<TestFrame,TestContext>(directory);
+        assert count(recovered, "a", "b") == 1;
+        recovered.addObservation("a", "c", 1);
+        recovered.close();
+
+        val reopened = new MappedLogPersistence<TestFrame,TestContext>(directory);
+        assert count(reopened, "a", "c") == 1;
+        reopened.close();
+    }
+}
@@ -110,4 +110,83 @@ public class PersistenceTest {
         assert sessionInput != null;
 
     }
+
+    @Test
+    public void testBestForFollowsUpdates() {
+        persistence.addObservation("s", "f (text)", 2);
+        persistence.addObservation("s", "f (text)", 2);
+        persistence.addObservation("s", "g (text)", 1);
+
+        // g has not been observed twice yet
+        assert "f (text)".equals(persistence.bestFor("s", 2));
+        assert persistence.bestFor("s", 3) == null;
+
+        // g overtakes f once it qualifies
+        persistence.addObservation("s", "g (text)", 5);
+        assert "g (text)".equals(persistence.bestFor("s", 2));
+
+        // g stays the best when it improves
+        persistence.addObservation("s", "g (text)", 3);
+        assert "g (text)".equals(persistence.bestFor("s", 2));
+        assert "g (text)".equals(persistence.bestFor("s", 3));
+
+        // f takes over again once g gets worse than it
+        persistence.addObservation("s", "g (text)", -10);
+        assert "f (text)".equals(persistence.bestFor("s", 2));
+        assert "g (text)".equals(persistence.bestFor("s", 3));
+    }
+
+    @Test
+    public void testBestForIndexesObservedStatesOnly() {
+        for (int i = 0; i < 100; i++)
+            assert persistence.bestFor("unseen" + i, 2) == null;
+        assert persistence.bestByThreshold.isEmpty();
+
+        persistence.addObservation("s", "f (text)", 1);
+        persistence.addObservation("s", "g (text)", 1);
+        // equally good stats rank in the order they were first observed
+        assert "f (text)".equals(persistence.bestFor("s", 1));
+        persistence.addObservation("s", "f (text)", 0);
+        assert "g (text)".equals(persistence.bestFor("s", 1));
+        assert persistence.bestByThreshold.size() == 1;
+    }
+
+    @Test
+    public void testBestForMergesWeightedStates() {
+        // the deep state has seen g once, which is not enough on its own
+        persistence.addObservation("deep", "g (text)", 4);
+        // the shallow state has seen f often, and g a few times but badly
+        for (int i = 0; i < 4; i++)
+            persistence.addObservation("shallow", "f (text)", 1);
+        persistence.addObservation("shallow", "g (text)", -1);
+        persistence.addObservation("shallow", "g (text)", -1);
+
+        List<String> states = Arrays.asList("deep", "shallow", "unseen");
+        assert persistence.bestFor("deep", 2) == null;
+        // g counts 1 + 0.5 * 2 times at (4 - 1) / 2, f counts 0.5 * 4 times at 1
+        assert "g (text)".equals(persistence.bestFor(states, new double[] {1, 0.5, 1}, 2));
+        // with the shallow state counting in full, g is worth (4 - 2) / 3 and f's steadier record wins
+        assert "f (text)".equals(persistence.bestFor(states, new double[] {1, 1, 1}, 3));
+        // with it counting for little, neither has been seen often enough
+        assert persistence.bestFor(states, new double[] {1, 0.25, 1}, 2) == null;
+        assert persistence.bestFor(Collections.singletonList("unseen"), new double[] {1}, 1) == null;
+    }
+
+    @Test
+    public void testUpdateRecordsTextAfterTheChain() {
+        Session<TestFrame,TestContext> session = new TestSession(context);
+        val input1 = script.processStatement(session, "a = f text;");
+        session.addStep(input1, new TestFrame(), false);
+        val input2 = script.processStatement(session, "b = f a;");
+        session.addStep(input2, new TestFrame(), false);
+
+        persistence.update(session, 1);
+
+        // the chain starts from the text regardless of the text's own entry
+        assert persistence.data.get(DEFAULT_STATE_SERIALIZATION).get(input1.serializeStatement()).getCount() == 1;
+        // which is learned from the state the last entry left
+        val text = session.getInput(DEFAULT_STATE_SERIALIZATION).serializeStatement();
+        val m = persistence.data.get(session.serializePrevious(input2.getAlias().get()));
+        assert m != null && m.get(text).getCount() == 1;
+    }
 }
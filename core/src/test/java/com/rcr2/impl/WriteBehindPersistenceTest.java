@@ -0,0 +1,132 @@
+package com.rcr2.impl;
+
+import com.rcr2.*;
+import lombok.val;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static com.rcr2.Session.DEFAULT_STATE_SERIALIZATION;
+
+public class WriteBehindPersistenceTest {
+
+    Script script;
+    TestContext context;
+    InMemoryPersistence<TestFrame,TestContext> delegate;
+    WriteBehindPersistence<TestFrame,TestContext> persistence;
+
+    @Before
+    public void setup() {
+        script = new Script();
+        context = new TestContext(new InMemorySequenceProvider<>());
+        context.withPureFunction("f", 1, args -> Optional.of(new TestFrame()));
+        delegate = new InMemoryPersistence<>();
+        // large batch and interval so nothing is written unless flushed
+        persistence = new WriteBehindPersistence<>(delegate, 100, 1000, 60_000);
+    }
+
+    @Test
+    public void testMergesUntilFlushed() {
+        val session = new TestSession(context);
+        val input = script.processStatement(session, "a = f text;");
+        session.addStep(input, new TestFrame(), false);
+
+        persistence.update(session, 1);
+        val pendingAfterFirstUpdate = persistence.pendingSize();
+        persistence.update(session, 2);
+
+        // both updates observed the same pairs so they are merged into the same pending entries
+        assert pendingAfterFirstUpdate > 0;
+        assert persistence.pendingSize() == pendingAfterFirstUpdate;
+        assert delegate.data.isEmpty();
+
+        persistence.flush();
+
+        assert persistence.pendingSize() == 0;
+        val stats = (InMemoryPersistence.FeedbackStats) delegate.data
+                .get(DEFAULT_STATE_SERIALIZATION)
+                .get(input.serializeStatement());
+        assert stats.getCount() == 2;
+        assert stats.getCumulative() == 3;
+    }
+
+    @Test
+    public void testCloseWritesPending() {
+        val session = new TestSession(context);
+        session.addStep(script.processStatement(session, "a = f text;"), new TestFrame(), false);
+        persistence.update(session, 1);
+        persistence.update(session, 1);
+
+        persistence.close();
+
+        assert persistence.pendingSize() == 0;
+        assert "f (text)".equals(delegate.bestFor(DEFAULT_STATE_SERIALIZATION, 2));
+    }
+
+    @Test
+    public void testRefusesObservationsOnceClosed() {
+        persistence = new WriteBehindPersistence<>(delegate, 1, 1000, 60_000);
+        val session = new TestSession(context);
+        session.addStep(script.processStatement(session, "a = f text;"), new TestFrame(), false);
+        persistence.close();
+
+        try {
+            persistence.update(session, 1);
+            assert false;
+        } catch (IllegalStateException e) {
+            // expected, rather than a rejected flush escaping from the executor
+        }
+        assert persistence.pendingSize() == 0;
+        assert delegate.data.isEmpty();
+    }
+
+    @Test
+    public void testWritesInBackgroundOnceBatchIsFull() throws InterruptedException {
+        persistence = new WriteBehindPersistence<>(delegate, 1, 1000, 60_000);
+        val session = new TestSession(context);
+        session.addStep(script.processStatement(session, "a = f text;"), new TestFrame(), false);
+        persistence.update(session, 1);
+
+        for (int i = 0; i < 100 && persistence.pendingSize() > 0; i++)
+            Thread.sleep(10);
+
+        assert persistence.pendingSize() == 0;
+        assert delegate.data.get(DEFAULT_STATE_SERIALIZATION) != null;
+        persistence.close();
+    }
+
+    @Test
+    public void testRetriesOnlyUnwrittenObservations() {
+        // fails the second observation of the first batch, after the first was stored
+        val failing = new InMemoryPersistence<TestFrame,TestContext>() {
+            int writes = 0;
+
+            @Override
+            protected void addObservation(Observation observation) {
+                if (++writes == 2)
+                    throw new IllegalStateException("throttled");
+                super.addObservation(observation);
+            }
+        };
+        persistence = new WriteBehindPersistence<>(failing, 100, 1000, 60_000);
+        persistence.addObservation("s", "f (text)", 1);
+        persistence.addObservation("s", "g (text)", 2);
+        persistence.addObservation("s", "h (text)", 3);
+
+        try {
+            persistence.flush();
+            assert false;
+        } catch (PartialWriteException e) {
+            assert e.getUnwritten().size() == 2;
+        }
+        assert persistence.pendingSize() == 2;
+
+        persistence.flush();
+        assert persistence.pendingSize() == 0;
+        for (val stats : failing.getFeedbackStats("s"))
+            assert stats.getCount() == 1;
+        assert failing.getFeedbackStats("s").size() == 3;
+        persistence.close();
+    }
+}
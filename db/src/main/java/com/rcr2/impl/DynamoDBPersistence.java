@@ -1,21 +1,82 @@
 package com.rcr2.impl;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.*;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.ConsistentReads;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperConfig.PaginationLoadingStrategy;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.rcr2.Context;
 import com.rcr2.Frame;
 import com.rcr2.Persistence;
 import lombok.*;
 
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class DynamoDBPersistence<F extends Frame<F>, C extends Context<F,C>> extends AbstractPersistence<F,C> {
 
+    final AmazonDynamoDB client;
     final DynamoDBMapper dynamoDB;
 
+    public DynamoDBPersistence(AmazonDynamoDB client) {
+        this(client, new DynamoDBMapper(client));
+    }
+
     public final static String FEEDBACK_STATS_TABLE = "FeedbackStats";
     public final static String PRIOR_STATEMENT_KEY = "priorStatement";
     public final static String SUBSEQUENT_STATEMENT_KEY = "subsequentStatement";
+    public final static String COUNT_KEY = "count";
+    public final static String CUMULATIVE_KEY = "cumulative";
+
+    public final static int DEFAULT_PAGE_SIZE = 100;
+    public final static int DEFAULT_LOOKUP_THREADS = 8;
+
+    /**
+     * Whether {@link #getFeedbackStats(String)} should read its own writes.
+     * Eventually consistent queries cost half the read capacity
+     */
+    @Getter @Setter
+    ConsistentReads consistentReads = ConsistentReads.EVENTUAL;
+
+    /**
+     * Maximum number of items fetched per query page
+     */
+    @Getter @Setter
+    int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Runs the queries of {@link #getFeedbackStats(Collection)} side by side.
+     * Unless one is set, a pool of {@link #DEFAULT_LOOKUP_THREADS} daemon threads is created when first needed
+     * and shut down by {@link #close()}
+     */
+    ExecutorService lookupExecutor;
+    private boolean ownsLookupExecutor = false;
+
+    public synchronized void setLookupExecutor(ExecutorService lookupExecutor) {
+        this.lookupExecutor = lookupExecutor;
+        this.ownsLookupExecutor = false;
+    }
+
+    // `count` is a DynamoDB reserved word so every attribute is projected through a placeholder
+    private static final String STATS_PROJECTION = "#next, #count, #cumulative";
+    private static final Map<String,String> STATS_PROJECTION_NAMES = new HashMap<String,String>() {{
+        this.put("#next", SUBSEQUENT_STATEMENT_KEY);
+        this.put("#count", COUNT_KEY);
+        this.put("#cumulative", CUMULATIVE_KEY);
+    }};
+
+    // counters are incremented in place so that concurrent sessions never overwrite each other
+    private static final String INCREMENT_EXPRESSION = "ADD #count :count, #cumulative :cumulative";
+    private static final Map<String,String> INCREMENT_NAMES = new HashMap<String,String>() {{
+        this.put("#count", COUNT_KEY);
+        this.put("#cumulative", CUMULATIVE_KEY);
+    }};
 
     @DynamoDBTable(tableName = FEEDBACK_STATS_TABLE)
     @NoArgsConstructor
@@ -51,7 +112,7 @@ public class DynamoDBPersistence<F extends Frame<F>, C extends Context<F,C>> ext
         }
 
         @Override
-        @DynamoDBAttribute(attributeName = "count")
+        @DynamoDBAttribute(attributeName = COUNT_KEY)
         public Integer getCount() {
             return count;
         }
@@ -60,7 +121,7 @@ public class DynamoDBPersistence<F extends Frame<F>, C extends Context<F,C>> ext
             this.count = count;
         }
 
-        @DynamoDBAttribute(attributeName = "cumulative")
+        @DynamoDBAttribute(attributeName = CUMULATIVE_KEY)
         public Integer getCumulative() {
             return cumulative;
         }
@@ -85,17 +146,101 @@ public class DynamoDBPersistence<F extends Frame<F>, C extends Context<F,C>> ext
 
     }
 
+    /**
+     * Query the partition keyed by {@code currentState} rather than scanning the table.
+     * Pages of {@link #pageSize} items are only fetched as the result is iterated.
+     * Only the attributes needed to rank the next statement are projected,
+     * so the returned stats do not carry their prior statement.
+     */
     public Collection<? extends Persistence.FeedbackStats> getFeedbackStats(String currentState) {
-        val expression = new DynamoDBScanExpression()
-                .addExpressionAttributeNamesEntry(PRIOR_STATEMENT_KEY, currentState);
-        return dynamoDB.scan(FeedbackStats.class, expression);
+        val expression = new DynamoDBQueryExpression<FeedbackStats>()
+                .withHashKeyValues(new FeedbackStats(currentState, null))
+                .withConsistentRead(consistentReads == ConsistentReads.CONSISTENT)
+                .withProjectionExpression(STATS_PROJECTION)
+                .withExpressionAttributeNames(STATS_PROJECTION_NAMES)
+                .withLimit(pageSize);
+        val config = DynamoDBMapperConfig.builder()
+                .withConsistentReads(consistentReads)
+                .withPaginationLoadingStrategy(PaginationLoadingStrategy.LAZY_LOADING)
+                .build();
+        return dynamoDB.query(FeedbackStats.class, expression, config);
+    }
+
+    /**
+     * DynamoDB cannot query several partitions in one request, so the query of each state is issued on the
+     * lookup executor and their first pages are fetched at the same time rather than one round trip after another.
+     * Later pages are still only fetched as the results are iterated
+     */
+    @Override
+    public Map<String,Collection<? extends Persistence.FeedbackStats>> getFeedbackStats(Collection<String> states) {
+        if (states.size() < 2)
+            return super.getFeedbackStats(states);
+
+        val executor = lookupExecutor();
+        Map<String,CompletableFuture<Collection<? extends Persistence.FeedbackStats>>> queries = new LinkedHashMap<>();
+        for (val state : states)
+            queries.computeIfAbsent(state, s -> CompletableFuture.supplyAsync(() -> getFeedbackStats(s), executor));
+
+        val feedbackStats = new HashMap<String,Collection<? extends Persistence.FeedbackStats>>();
+        for (val query : queries.entrySet()) {
+            try {
+                feedbackStats.put(query.getKey(), query.getValue().join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        return feedbackStats;
+    }
+
+    private synchronized ExecutorService lookupExecutor() {
+        if (lookupExecutor == null) {
+            lookupExecutor = Executors.newFixedThreadPool(DEFAULT_LOOKUP_THREADS, runnable -> {
+                val thread = new Thread(runnable, "rcr2-dynamodb-lookup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownsLookupExecutor = true;
+        }
+        return lookupExecutor;
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        if (ownsLookupExecutor) {
+            lookupExecutor.shutdown();
+            lookupExecutor = null;
+            ownsLookupExecutor = false;
+        }
     }
 
     protected void addObservation(String previous, String next, int score) {
-        val newStats = new FeedbackStats(previous, next);
-        val oldStats = dynamoDB.load(newStats);
-        val toUpdate = oldStats == null ? newStats : oldStats;
-        toUpdate.increment(score);
-        dynamoDB.save(toUpdate);
+        increment(previous, next, 1, score);
+    }
+
+    @Override
+    protected void addObservation(Observation observation) {
+        increment(observation.getPriorStatement(),
+                observation.getSubsequentStatement(),
+                observation.getCount(),
+                observation.getCumulative());
+    }
+
+    /**
+     * Atomically add to the counters of one item with a single {@code UpdateItem} call.
+     * The item is created if it does not exist yet, and no read is needed beforehand
+     */
+    private void increment(String previous, String next, int count, int cumulative) {
+        client.updateItem(new UpdateItemRequest()
+                .withTableName(FEEDBACK_STATS_TABLE)
+                .addKeyEntry(PRIOR_STATEMENT_KEY, new AttributeValue(previous))
+                .addKeyEntry(SUBSEQUENT_STATEMENT_KEY, new AttributeValue(next))
+                .withUpdateExpression(INCREMENT_EXPRESSION)
+                .withExpressionAttributeNames(INCREMENT_NAMES)
+                .addExpressionAttributeValuesEntry(":count", new AttributeValue().withN(Integer.toString(count)))
+                .addExpressionAttributeValuesEntry(":cumulative", new AttributeValue().withN(Integer.toString(cumulative)))
+                .withReturnValues(ReturnValue.NONE));
     }
 }